@@ -11,6 +11,7 @@ import static javax.lang.model.element.Modifier.STATIC;
 
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
@@ -55,6 +56,124 @@ final class GenerateAstWithJavaPoet {
       ParameterizedTypeName.get(ClassName.get(List.class), TOKEN);
   private static final ClassName OBJECT = ClassName.get(Object.class);
   private static final ClassName NULLABLE_OBJECT = OBJECT.annotated(List.of(NULLABLE_ANNOTATION));
+  private static final ClassName BINARY_NODE = ClassName.get(PACKAGE_NAME, "BinaryNode");
+  private static final ClassName INLINE_CACHE = ClassName.get(PACKAGE_NAME, "InlineCache");
+  private static final ClassName ROOT_SHAPES = ClassName.get(PACKAGE_NAME, "RootShapes");
+  private static final ParameterizedTypeName CAPTURE_LIST =
+      ParameterizedTypeName.get(
+          ClassName.get(List.class), ClassName.get(PACKAGE_NAME, "Capture"));
+  private static final ClassName NULLABLE_COMPILED_FUNCTION =
+      ClassName.get(PACKAGE_NAME, "CompiledFunction").annotated(List.of(NULLABLE_ANNOTATION));
+  private static final ClassName NULLABLE_LAZY_BODY =
+      ClassName.get(PACKAGE_NAME, "LazyBody").annotated(List.of(NULLABLE_ANNOTATION));
+
+  // Fields that the Resolver fills in after parsing, so the Interpreter can read them straight off
+  // the node.
+  private static final MutableField DEPTH =
+      new MutableField(
+          TypeName.INT,
+          "depth",
+          CodeBlock.of("-1"),
+          "How many scopes out the variable was declared, or -1 if it is a global.");
+  private static final MutableField SLOT =
+      new MutableField(
+          TypeName.INT,
+          "slot",
+          CodeBlock.of("-1"),
+          "The variable's slot in the frame of the function that declares it, if it is a local.");
+  private static final MutableField UPVALUE =
+      new MutableField(
+          TypeName.INT,
+          "upvalue",
+          CodeBlock.of("-1"),
+          "The index of the variable among the upvalues of the function that reads it, or -1 if"
+              + " the variable isn't captured from an enclosing function.");
+  private static final MutableField FRAME_SIZE =
+      new MutableField(
+          TypeName.INT,
+          "frameSize",
+          CodeBlock.of("0"),
+          "How many slots of its function's frame the variables in scope anywhere inside this node"
+              + " need.");
+  private static final MutableField FIRST_CAPTURED_SLOT =
+      new MutableField(
+          TypeName.INT,
+          "firstCapturedSlot",
+          CodeBlock.of("-1"),
+          "The lowest slot of the variables declared directly in this scope that closures capture,"
+              + " or -1 if closures capture none of them.");
+  private static final MutableField HAS_SCOPE =
+      new MutableField(
+          TypeName.BOOLEAN,
+          "hasScope",
+          CodeBlock.of("true"),
+          "Whether the block declares variables, and so has a scope of its own. A block that"
+              + " doesn't runs in the enclosing scope.");
+  private static final MutableField SUPER_SLOT =
+      new MutableField(
+          TypeName.INT,
+          "superSlot",
+          CodeBlock.of("-1"),
+          "The slot that holds the superclass as \"super\" while the methods are created, if the"
+              + " class has a superclass.");
+  private static final MutableField ASSIGNED =
+      new MutableField(
+          TypeName.BOOLEAN,
+          "assigned",
+          CodeBlock.of("false"),
+          "Whether the variable is ever assigned to after its declaration, if it is a local.");
+  private static final MutableField THIS_UPVALUE =
+      new MutableField(
+          TypeName.INT,
+          "thisUpvalue",
+          CodeBlock.of("-1"),
+          "The index of \"this\" among the upvalues of the function that reads it, or -1 if the"
+              + " enclosing method's own frame holds it in slot 0.");
+  private static final MutableField CAPTURES =
+      new MutableField(
+          CAPTURE_LIST,
+          "captures",
+          CodeBlock.of("$T.of()", List.class),
+          "Where each variable that the function captures from enclosing functions is found, in"
+              + " the order of the function's upvalues.");
+
+  // Fields that the Interpreter rewrites as it learns how a node is used.
+  private static final MutableField BINARY_NODE_FIELD =
+      new MutableField(
+          BINARY_NODE,
+          "node",
+          CodeBlock.of("$T.UNINITIALIZED", BINARY_NODE),
+          "How to execute this expression, specialized for the operands it has seen so far.");
+  private static final MutableField INLINE_CACHE_FIELD =
+      new MutableField(
+          INLINE_CACHE,
+          "cache",
+          CodeBlock.of("new $T()", INLINE_CACHE),
+          "Where the property was found on the instances this expression has seen so far.");
+  private static final MutableField ROOT_SHAPES_FIELD =
+      new MutableField(
+          ROOT_SHAPES,
+          "rootShapes",
+          CodeBlock.of("new $T()", ROOT_SHAPES),
+          "The root shapes of the classes this declaration makes, shared by every run.");
+  private static final MutableField COMPILED =
+      new MutableField(
+          NULLABLE_COMPILED_FUNCTION,
+          "compiled",
+          CodeBlock.of("null"),
+          "The function's body compiled to JVM bytecode, once it has been called often enough.");
+  private static final MutableField UNCOMPILABLE =
+      new MutableField(
+          TypeName.BOOLEAN,
+          "uncompilable",
+          CodeBlock.of("false"),
+          "Whether the JitCompiler gave up on compiling the function.");
+  private static final MutableField LAZY_BODY =
+      new MutableField(
+          NULLABLE_LAZY_BODY,
+          "lazyBody",
+          CodeBlock.of("null"),
+          "Where to parse the function's body from, if the Parser skipped it.");
 
   public static void main(String... args) throws IOException {
     if (args.length != 1) {
@@ -68,23 +187,26 @@ final class GenerateAstWithJavaPoet {
         outputDir,
         List.of(
             new AstSubType(
-                "Assign", //
-                new Field(TOKEN, "name"),
-                new Field(EXPR, "value")),
+                    "Assign", //
+                    new Field(TOKEN, "name"),
+                    new Field(EXPR, "value"))
+                .withMutableFields(DEPTH, SLOT, UPVALUE),
             new AstSubType(
-                "Binary", //
-                new Field(EXPR, "left"),
-                new Field(TOKEN, "operator"),
-                new Field(EXPR, "right")),
+                    "Binary", //
+                    new Field(EXPR, "left"),
+                    new Field(TOKEN, "operator"),
+                    new Field(EXPR, "right"))
+                .withMutableFields(BINARY_NODE_FIELD),
             new AstSubType(
                 "Call", //
                 new Field(EXPR, "callee"),
                 new Field(TOKEN, "paren"),
                 new Field(EXPR_LIST, "arguments")),
             new AstSubType(
-                "Get", //
-                new Field(EXPR, "object"),
-                new Field(TOKEN, "name")),
+                    "Get", //
+                    new Field(EXPR, "object"),
+                    new Field(TOKEN, "name"))
+                .withMutableFields(INLINE_CACHE_FIELD),
             new AstSubType(
                 "Grouping", //
                 new Field(EXPR, "expression")),
@@ -102,39 +224,58 @@ final class GenerateAstWithJavaPoet {
                 new Field(TOKEN, "name"),
                 new Field(EXPR, "value")),
             new AstSubType(
-                "Super", //
-                new Field(TOKEN, "keyword"),
-                new Field(TOKEN, "method")),
+                    "Super", //
+                    new Field(TOKEN, "keyword"),
+                    new Field(TOKEN, "method"))
+                .withMutableFields(DEPTH, SLOT, UPVALUE, THIS_UPVALUE),
             new AstSubType(
-                "This", //
-                new Field(TOKEN, "keyword")),
+                    "This", //
+                    new Field(TOKEN, "keyword"))
+                .withMutableFields(DEPTH, SLOT, UPVALUE),
             new AstSubType(
                 "Unary", //
                 new Field(TOKEN, "operator"),
                 new Field(EXPR, "right")),
             new AstSubType(
-                "Variable", //
-                new Field(TOKEN, "name"))));
+                    "Variable", //
+                    new Field(TOKEN, "name"))
+                .withMutableFields(DEPTH, SLOT, UPVALUE)));
     defineAst(
         STMT,
         outputDir,
         List.of(
             new AstSubType(
-                "Block", //
-                new Field(STMT_LIST, "statements")),
+                    "Block", //
+                    new Field(STMT_LIST, "statements"))
+                .withMutableFields(HAS_SCOPE, FRAME_SIZE, FIRST_CAPTURED_SLOT),
             new AstSubType(
-                "Class", //
-                new Field(TOKEN, "name"),
-                new Field(NULLABLE_VARIABLE_EXPR, "superclass"),
-                new Field(FUNCTION_STMT_LIST, "methods")),
+                "Break", //
+                new Field(TOKEN, "keyword")),
+            new AstSubType(
+                    "Class", //
+                    new Field(TOKEN, "name"),
+                    new Field(NULLABLE_VARIABLE_EXPR, "superclass"),
+                    new Field(FUNCTION_STMT_LIST, "methods"))
+                .withMutableFields(SLOT, SUPER_SLOT, ROOT_SHAPES_FIELD),
+            new AstSubType(
+                "Continue", //
+                new Field(TOKEN, "keyword")),
             new AstSubType(
                 "Expression", //
                 new Field(EXPR, "expression")),
             new AstSubType(
-                "Function", //
-                new Field(TOKEN, "name"),
-                new Field(TOKEN_LIST, "params"),
-                new Field(STMT_LIST, "body")),
+                    "Function", //
+                    new Field(TOKEN, "name"),
+                    new Field(TOKEN_LIST, "params"),
+                    new Field(STMT_LIST, "body"))
+                .withMutableFields(
+                    SLOT,
+                    FRAME_SIZE,
+                    FIRST_CAPTURED_SLOT,
+                    CAPTURES,
+                    COMPILED,
+                    UNCOMPILABLE,
+                    LAZY_BODY),
             new AstSubType(
                 "If", //
                 new Field(EXPR, "condition"),
@@ -148,13 +289,16 @@ final class GenerateAstWithJavaPoet {
                 new Field(TOKEN, "keyword"),
                 new Field(NULLABLE_EXPR, "value")),
             new AstSubType(
-                "Var", //
-                new Field(TOKEN, "name"),
-                new Field(NULLABLE_EXPR, "initializer")),
+                    "Var", //
+                    new Field(TOKEN, "name"),
+                    new Field(NULLABLE_EXPR, "initializer"))
+                .withMutableFields(SLOT, ASSIGNED),
             new AstSubType(
                 "While", //
+                new Field(TOKEN, "keyword"),
                 new Field(EXPR, "condition"),
-                new Field(STMT, "body"))));
+                new Field(STMT, "body"),
+                new Field(NULLABLE_EXPR, "increment"))));
   }
 
   private static void defineAst(ClassName astBaseName, String outputDir, List<AstSubType> types)
@@ -188,7 +332,12 @@ final class GenerateAstWithJavaPoet {
     // The AST classes.
     for (var type : types) {
       typeSpecBuilder.addType(
-          defineSubType(astBaseName.packageName(), typeSpecBuilder.build(), type.subType, type.fields));
+          defineSubType(
+              astBaseName.packageName(),
+              typeSpecBuilder.build(),
+              type.subType,
+              type.fields,
+              type.mutableFields));
     }
 
     var astSourceCode =
@@ -219,12 +368,26 @@ final class GenerateAstWithJavaPoet {
   }
 
   private static TypeSpec defineSubType(
-      String packageName, TypeSpec outerBaseType, String innerSubType, List<Field> fields) {
+      String packageName,
+      TypeSpec outerBaseType,
+      String innerSubType,
+      List<Field> fields,
+      List<MutableField> mutableFields) {
     var fieldSpecs =
         fields.stream()
             .map(field -> FieldSpec.builder(field.typeName, field.name, FINAL).build())
             .toList();
 
+    var mutableFieldSpecs =
+        mutableFields.stream()
+            .map(
+                field ->
+                    FieldSpec.builder(field.typeName, field.name)
+                        .addJavadoc(field.javadoc)
+                        .initializer(field.initializer)
+                        .build())
+            .toList();
+
     var parameterSpecs =
         fields.stream()
             .map(f -> ParameterSpec.builder(f.typeName, f.name).build())
@@ -268,6 +431,7 @@ final class GenerateAstWithJavaPoet {
         .addModifiers(PUBLIC, STATIC, FINAL)
         .addSuperinterface(ClassName.get(packageName, outerBaseType.name))
         .addFields(fieldSpecs)
+        .addFields(mutableFieldSpecs)
         .addMethod(constructorBuilder.build())
         .addMethod(acceptMethod)
         .addAnnotation(GENERATED_ANNOTATION)
@@ -289,13 +453,28 @@ final class GenerateAstWithJavaPoet {
     }
   }
 
-  private record AstSubType(String subType, List<Field> fields) {
+  /** A non-final field that is not set by the constructor, but filled in by a later pass. */
+  private record MutableField(
+      TypeName typeName, String name, CodeBlock initializer, String javadoc) {
+    MutableField {
+      requireNonNull(typeName);
+      requireNonNull(name);
+      requireNonNull(initializer);
+      requireNonNull(javadoc);
+    }
+  }
+
+  private record AstSubType(String subType, List<Field> fields, List<MutableField> mutableFields) {
     AstSubType {
       requireNonNull(subType);
     }
 
     AstSubType(String subType, Field... fields) {
-      this(subType, List.copyOf(Arrays.asList(fields)));
+      this(subType, List.copyOf(Arrays.asList(fields)), List.of());
+    }
+
+    AstSubType withMutableFields(MutableField... mutableFields) {
+      return new AstSubType(subType, fields, List.copyOf(Arrays.asList(mutableFields)));
     }
   }
 }
@@ -36,6 +36,7 @@ idea {
 
 dependencies {
     implementation("com.google.guava:guava:33.4.8-jre")
+    implementation("org.ow2.asm:asm:9.8")
     testImplementation("org.junit.jupiter:junit-jupiter:5.13.0")
 }
 
@@ -1,15 +1,21 @@
 package com.craftinginterpreters.lox;
 
+import java.util.List;
 import java.util.StringJoiner;
+import org.jspecify.annotations.Nullable;
 
-final class AstPrinter implements Expr.Visitor<String> {
+final class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
   String print(Expr expr) {
     return expr.accept(this);
   }
 
+  String print(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
   @Override
   public String visitAssignExpr(Expr.Assign expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return parenthesize("= " + expr.name.lexeme(), expr.value);
   }
 
   @Override
@@ -19,12 +25,15 @@ final class AstPrinter implements Expr.Visitor<String> {
 
   @Override
   public String visitCallExpr(Expr.Call expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    var joiner = new StringJoiner(" ", "(call ", ")");
+    joiner.add(print(expr.callee));
+    expr.arguments.forEach(argument -> joiner.add(print(argument)));
+    return joiner.toString();
   }
 
   @Override
   public String visitGetExpr(Expr.Get expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return parenthesize(". " + expr.name.lexeme(), expr.object);
   }
 
   @Override
@@ -39,22 +48,22 @@ final class AstPrinter implements Expr.Visitor<String> {
 
   @Override
   public String visitLogicalExpr(Expr.Logical expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
   }
 
   @Override
   public String visitSetExpr(Expr.Set expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return parenthesize("=. " + expr.name.lexeme(), expr.object, expr.value);
   }
 
   @Override
   public String visitSuperExpr(Expr.Super expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return "(super " + expr.method.lexeme() + ")";
   }
 
   @Override
   public String visitThisExpr(Expr.This expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return "this";
   }
 
   @Override
@@ -64,7 +73,78 @@ final class AstPrinter implements Expr.Visitor<String> {
 
   @Override
   public String visitVariableExpr(Expr.Variable expr) {
-    throw new UnsupportedOperationException("Not yet implemented.");
+    return expr.name.lexeme();
+  }
+
+  @Override
+  public String visitBlockStmt(Stmt.Block stmt) {
+    return block("block", stmt.statements);
+  }
+
+  @Override
+  public String visitBreakStmt(Stmt.Break stmt) {
+    return "(break)";
+  }
+
+  @Override
+  public String visitClassStmt(Stmt.Class stmt) {
+    var joiner = new StringJoiner(" ", "(class ", ")");
+    joiner.add(stmt.name.lexeme());
+    if (stmt.superclass != null) {
+      joiner.add("< " + print(stmt.superclass));
+    }
+    stmt.methods.forEach(method -> joiner.add(print(method)));
+    return joiner.toString();
+  }
+
+  @Override
+  public String visitContinueStmt(Stmt.Continue stmt) {
+    return "(continue)";
+  }
+
+  @Override
+  public String visitExpressionStmt(Stmt.Expression stmt) {
+    return parenthesize(";", stmt.expression);
+  }
+
+  @Override
+  public String visitFunctionStmt(Stmt.Function stmt) {
+    var params = new StringJoiner(" ", "(", ")");
+    stmt.params.forEach(param -> params.add(param.lexeme()));
+    return block("fun " + stmt.name.lexeme() + params, stmt.body);
+  }
+
+  @Override
+  public String visitIfStmt(Stmt.If stmt) {
+    String ifThen = "(if " + print(stmt.condition) + " " + print(stmt.thenBranch);
+    if (stmt.elseBranch == null) {
+      return ifThen + ")";
+    }
+    return ifThen + " " + print(stmt.elseBranch) + ")";
+  }
+
+  @Override
+  public String visitPrintStmt(Stmt.Print stmt) {
+    return parenthesize("print", stmt.expression);
+  }
+
+  @Override
+  public String visitReturnStmt(Stmt.Return stmt) {
+    return optionally("return", stmt.value);
+  }
+
+  @Override
+  public String visitVarStmt(Stmt.Var stmt) {
+    return optionally("var " + stmt.name.lexeme(), stmt.initializer);
+  }
+
+  @Override
+  public String visitWhileStmt(Stmt.While stmt) {
+    String whileBody = "(while " + print(stmt.condition) + " " + print(stmt.body);
+    if (stmt.increment == null) {
+      return whileBody + ")";
+    }
+    return whileBody + " " + print(stmt.increment) + ")";
   }
 
   private String parenthesize(String name, Expr... exprs) {
@@ -74,4 +154,16 @@ final class AstPrinter implements Expr.Visitor<String> {
     }
     return joiner.toString();
   }
+
+  private String optionally(String name, @Nullable Expr expr) {
+    return expr == null ? "(" + name + ")" : parenthesize(name, expr);
+  }
+
+  private String block(String name, List<Stmt> statements) {
+    var joiner = new StringJoiner("", "(" + name, ")");
+    for (Stmt statement : statements) {
+      joiner.add(" ").add(statement.accept(this));
+    }
+    return joiner.toString();
+  }
 }
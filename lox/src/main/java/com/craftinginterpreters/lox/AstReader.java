@@ -0,0 +1,279 @@
+package com.craftinginterpreters.lox;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteStreams;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reads back a program written by {@link AstWriter}, resolved just as it was when it was written.
+ *
+ * <p>Bytes that aren't a program written by AstWriter make it throw {@link IllegalStateException}.
+ */
+final class AstReader {
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  private final ByteArrayDataInput in;
+  private final List<String> strings = new ArrayList<>();
+
+  AstReader(byte[] bytes, int start) {
+    this(ByteStreams.newDataInput(bytes, start));
+  }
+
+  /** Makes a reader that reads from {@code in}, among whatever else is read from there. */
+  AstReader(ByteArrayDataInput in) {
+    this.in = in;
+  }
+
+  List<Stmt> read() {
+    return readStatements();
+  }
+
+  private List<Stmt> readStatements() {
+    int count = readCount();
+    var statements = new ArrayList<Stmt>(count);
+    for (int i = 0; i < count; i++) {
+      statements.add(readStatement());
+    }
+    return statements;
+  }
+
+  private List<Stmt.Function> readFunctions() {
+    int count = readCount();
+    var functions = new ArrayList<Stmt.Function>(count);
+    for (int i = 0; i < count; i++) {
+      functions.add(readFunction());
+    }
+    return functions;
+  }
+
+  Stmt.Function readFunction() {
+    if (!(readStatementOrNull() instanceof Stmt.Function function)) {
+      throw new IllegalStateException("Expected a function");
+    }
+    return function;
+  }
+
+  private List<Expr> readExpressions() {
+    int count = readCount();
+    var exprs = new ArrayList<Expr>(count);
+    for (int i = 0; i < count; i++) {
+      exprs.add(readExpression());
+    }
+    return exprs;
+  }
+
+  private List<Token> readTokens() {
+    int count = readCount();
+    var tokens = new ArrayList<Token>(count);
+    for (int i = 0; i < count; i++) {
+      tokens.add(readToken());
+    }
+    return tokens;
+  }
+
+  int readCount() {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IllegalStateException("Negative count " + count);
+    }
+    return count;
+  }
+
+  private Token readToken() {
+    int type = in.readUnsignedByte();
+    if (type >= TOKEN_TYPES.length) {
+      throw new IllegalStateException("Unknown token type " + type);
+    }
+    String lexeme = readString();
+    int line = in.readInt();
+    Object literal = readLiteral();
+
+    TokenType tokenType = TOKEN_TYPES[type];
+    // Symbols are only numbered for as long as the JVM runs, so they are looked up afresh.
+    int symbol =
+        tokenType == TokenType.IDENTIFIER
+                || tokenType == TokenType.THIS
+                || tokenType == TokenType.SUPER
+            ? SymbolTable.intern(lexeme)
+            : -1;
+    return new Token(tokenType, lexeme, literal, line, symbol);
+  }
+
+  private @Nullable Object readLiteral() {
+    byte tag = in.readByte();
+    return switch (tag) {
+      case AstWriter.NIL -> null;
+      case AstWriter.FALSE -> false;
+      case AstWriter.TRUE -> true;
+      case AstWriter.NUMBER -> in.readDouble();
+      case AstWriter.STRING -> readString();
+      default -> throw new IllegalStateException("Unknown literal tag " + tag);
+    };
+  }
+
+  String readString() {
+    int index = in.readInt();
+    if (index != -1) {
+      if (index < 0 || index >= strings.size()) {
+        throw new IllegalStateException("Unknown string " + index);
+      }
+      return strings.get(index);
+    }
+
+    var bytes = new byte[readCount()];
+    in.readFully(bytes);
+    String string = new String(bytes, StandardCharsets.UTF_8);
+    strings.add(string);
+    return string;
+  }
+
+  private Expr readExpression() {
+    Expr expr = readExpressionOrNull();
+    if (expr == null) {
+      throw new IllegalStateException("Missing expression");
+    }
+    return expr;
+  }
+
+  private @Nullable Expr readExpressionOrNull() {
+    byte tag = in.readByte();
+    switch (tag) {
+      case 0:
+        return null;
+      case AstWriter.ASSIGN:
+        {
+          var expr = new Expr.Assign(readToken(), readExpression());
+          expr.depth = in.readInt();
+          expr.slot = in.readInt();
+          expr.upvalue = in.readInt();
+          return expr;
+        }
+      case AstWriter.BINARY:
+        return new Expr.Binary(readExpression(), readToken(), readExpression());
+      case AstWriter.CALL:
+        return new Expr.Call(readExpression(), readToken(), readExpressions());
+      case AstWriter.GET:
+        return new Expr.Get(readExpression(), readToken());
+      case AstWriter.GROUPING:
+        return new Expr.Grouping(readExpression());
+      case AstWriter.LITERAL:
+        return new Expr.Literal(readLiteral());
+      case AstWriter.LOGICAL:
+        return new Expr.Logical(readExpression(), readToken(), readExpression());
+      case AstWriter.SET:
+        return new Expr.Set(readExpression(), readToken(), readExpression());
+      case AstWriter.SUPER:
+        {
+          var expr = new Expr.Super(readToken(), readToken());
+          expr.depth = in.readInt();
+          expr.slot = in.readInt();
+          expr.upvalue = in.readInt();
+          expr.thisUpvalue = in.readInt();
+          return expr;
+        }
+      case AstWriter.THIS:
+        {
+          var expr = new Expr.This(readToken());
+          expr.depth = in.readInt();
+          expr.slot = in.readInt();
+          expr.upvalue = in.readInt();
+          return expr;
+        }
+      case AstWriter.UNARY:
+        return new Expr.Unary(readToken(), readExpression());
+      case AstWriter.VARIABLE:
+        return readVariable();
+      default:
+        throw new IllegalStateException("Unknown expression tag " + tag);
+    }
+  }
+
+  /** Reads the rest of a variable expression, after its tag. */
+  private Expr.Variable readVariable() {
+    var expr = new Expr.Variable(readToken());
+    expr.depth = in.readInt();
+    expr.slot = in.readInt();
+    expr.upvalue = in.readInt();
+    return expr;
+  }
+
+  private Stmt readStatement() {
+    Stmt stmt = readStatementOrNull();
+    if (stmt == null) {
+      throw new IllegalStateException("Missing statement");
+    }
+    return stmt;
+  }
+
+  private @Nullable Stmt readStatementOrNull() {
+    byte tag = in.readByte();
+    switch (tag) {
+      case 0:
+        return null;
+      case AstWriter.BLOCK:
+        {
+          var stmt = new Stmt.Block(readStatements());
+          stmt.hasScope = in.readBoolean();
+          stmt.frameSize = in.readInt();
+          stmt.firstCapturedSlot = in.readInt();
+          return stmt;
+        }
+      case AstWriter.BREAK:
+        return new Stmt.Break(readToken());
+      case AstWriter.CLASS:
+        {
+          Token name = readToken();
+          Expr.Variable superclass = null;
+          byte superclassTag = in.readByte();
+          if (superclassTag == AstWriter.VARIABLE) {
+            superclass = readVariable();
+          } else if (superclassTag != 0) {
+            throw new IllegalStateException("Expected a superclass");
+          }
+          var stmt = new Stmt.Class(name, superclass, readFunctions());
+          stmt.slot = in.readInt();
+          stmt.superSlot = in.readInt();
+          return stmt;
+        }
+      case AstWriter.CONTINUE:
+        return new Stmt.Continue(readToken());
+      case AstWriter.EXPRESSION:
+        return new Stmt.Expression(readExpression());
+      case AstWriter.FUNCTION:
+        {
+          var stmt = new Stmt.Function(readToken(), readTokens(), readStatements());
+          stmt.slot = in.readInt();
+          stmt.frameSize = in.readInt();
+          stmt.firstCapturedSlot = in.readInt();
+          int captureCount = readCount();
+          var captures = new ArrayList<Capture>(captureCount);
+          for (int i = 0; i < captureCount; i++) {
+            captures.add(new Capture(in.readBoolean(), in.readInt()));
+          }
+          stmt.captures = captures;
+          return stmt;
+        }
+      case AstWriter.IF:
+        return new Stmt.If(readExpression(), readStatement(), readStatementOrNull());
+      case AstWriter.PRINT:
+        return new Stmt.Print(readExpression());
+      case AstWriter.RETURN:
+        return new Stmt.Return(readToken(), readExpressionOrNull());
+      case AstWriter.VAR:
+        {
+          var stmt = new Stmt.Var(readToken(), readExpressionOrNull());
+          stmt.slot = in.readInt();
+          stmt.assigned = in.readBoolean();
+          return stmt;
+        }
+      case AstWriter.WHILE:
+        return new Stmt.While(
+            readToken(), readExpression(), readStatement(), readExpressionOrNull());
+      default:
+        throw new IllegalStateException("Unknown statement tag " + tag);
+    }
+  }
+}
@@ -0,0 +1,352 @@
+package com.craftinginterpreters.lox;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Writes a resolved program as bytes, which {@link AstReader} turns back into the same program.
+ *
+ * <p>Each node is written as a tag for its kind, then its children in order, then the fields the
+ * {@link Resolver} filled in. Fields that only hold what the program has learned while running,
+ * like {@link Expr.Binary#node}, aren't written. Each distinct String is only written out in full
+ * the first time; after that it's written as its index among the Strings written so far.
+ */
+final class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+  // The tags of the kinds of expression. 0 stands for a missing expression.
+  static final byte ASSIGN = 1;
+  static final byte BINARY = 2;
+  static final byte CALL = 3;
+  static final byte GET = 4;
+  static final byte GROUPING = 5;
+  static final byte LITERAL = 6;
+  static final byte LOGICAL = 7;
+  static final byte SET = 8;
+  static final byte SUPER = 9;
+  static final byte THIS = 10;
+  static final byte UNARY = 11;
+  static final byte VARIABLE = 12;
+
+  // The tags of the kinds of statement. 0 stands for a missing statement.
+  static final byte BLOCK = 1;
+  static final byte BREAK = 2;
+  static final byte CLASS = 3;
+  static final byte CONTINUE = 4;
+  static final byte EXPRESSION = 5;
+  static final byte FUNCTION = 6;
+  static final byte IF = 7;
+  static final byte PRINT = 8;
+  static final byte RETURN = 9;
+  static final byte VAR = 10;
+  static final byte WHILE = 11;
+
+  // The tags of the kinds of literal value.
+  static final byte NIL = 0;
+  static final byte FALSE = 1;
+  static final byte TRUE = 2;
+  static final byte NUMBER = 3;
+  static final byte STRING = 4;
+
+  private final ByteArrayDataOutput out;
+  private final Map<String, Integer> strings = new HashMap<>();
+
+  AstWriter() {
+    this(ByteStreams.newDataOutput());
+  }
+
+  /** Makes a writer that writes to {@code out}, among whatever else is written there. */
+  AstWriter(ByteArrayDataOutput out) {
+    this.out = out;
+  }
+
+  byte[] write(List<Stmt> statements) {
+    writeStatements(statements);
+    return out.toByteArray();
+  }
+
+  private void write(@Nullable Expr expr) {
+    if (expr == null) {
+      out.writeByte(0);
+    } else {
+      expr.accept(this);
+    }
+  }
+
+  void write(@Nullable Stmt stmt) {
+    if (stmt == null) {
+      out.writeByte(0);
+    } else {
+      stmt.accept(this);
+    }
+  }
+
+  private void writeExpressions(List<Expr> exprs) {
+    out.writeInt(exprs.size());
+    exprs.forEach(this::write);
+  }
+
+  private void writeStatements(List<? extends Stmt> statements) {
+    out.writeInt(statements.size());
+    statements.forEach(this::write);
+  }
+
+  private void write(Token token) {
+    out.writeByte(token.type().ordinal());
+    write(token.lexeme());
+    out.writeInt(token.line());
+    writeLiteral(token.literal());
+  }
+
+  private void writeTokens(List<Token> tokens) {
+    out.writeInt(tokens.size());
+    tokens.forEach(this::write);
+  }
+
+  private void writeLiteral(@Nullable Object value) {
+    switch (value) {
+      case null -> out.writeByte(NIL);
+      case Boolean b -> out.writeByte(b ? TRUE : FALSE);
+      case Double number -> {
+        out.writeByte(NUMBER);
+        out.writeDouble(number);
+      }
+      case String string -> {
+        out.writeByte(STRING);
+        write(string);
+      }
+      default -> throw new AssertionError("Unexpected literal " + value);
+    }
+  }
+
+  void write(String string) {
+    Integer index = strings.get(string);
+    if (index != null) {
+      out.writeInt(index);
+      return;
+    }
+
+    strings.put(string, strings.size());
+    out.writeInt(-1);
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private void writeLocation(int depth, int slot, int upvalue) {
+    out.writeInt(depth);
+    out.writeInt(slot);
+    out.writeInt(upvalue);
+  }
+
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    out.writeByte(ASSIGN);
+    write(expr.name);
+    write(expr.value);
+    writeLocation(expr.depth, expr.slot, expr.upvalue);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    out.writeByte(BINARY);
+    write(expr.left);
+    write(expr.operator);
+    write(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    out.writeByte(CALL);
+    write(expr.callee);
+    write(expr.paren);
+    writeExpressions(expr.arguments);
+    return null;
+  }
+
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    out.writeByte(GET);
+    write(expr.object);
+    write(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    out.writeByte(GROUPING);
+    write(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    out.writeByte(LITERAL);
+    writeLiteral(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visitLogicalExpr(Expr.Logical expr) {
+    out.writeByte(LOGICAL);
+    write(expr.left);
+    write(expr.operator);
+    write(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitSetExpr(Expr.Set expr) {
+    out.writeByte(SET);
+    write(expr.object);
+    write(expr.name);
+    write(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    out.writeByte(SUPER);
+    write(expr.keyword);
+    write(expr.method);
+    writeLocation(expr.depth, expr.slot, expr.upvalue);
+    out.writeInt(expr.thisUpvalue);
+    return null;
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    out.writeByte(THIS);
+    write(expr.keyword);
+    writeLocation(expr.depth, expr.slot, expr.upvalue);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    out.writeByte(UNARY);
+    write(expr.operator);
+    write(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    out.writeByte(VARIABLE);
+    write(expr.name);
+    writeLocation(expr.depth, expr.slot, expr.upvalue);
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    out.writeByte(BLOCK);
+    writeStatements(stmt.statements);
+    out.writeBoolean(stmt.hasScope);
+    out.writeInt(stmt.frameSize);
+    out.writeInt(stmt.firstCapturedSlot);
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    out.writeByte(BREAK);
+    write(stmt.keyword);
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    out.writeByte(CLASS);
+    write(stmt.name);
+    write(stmt.superclass);
+    writeStatements(stmt.methods);
+    out.writeInt(stmt.slot);
+    out.writeInt(stmt.superSlot);
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    out.writeByte(CONTINUE);
+    write(stmt.keyword);
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    out.writeByte(EXPRESSION);
+    write(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    if (stmt.lazyBody != null) {
+      throw new IllegalArgumentException("Can't write a function whose body hasn't been parsed");
+    }
+
+    out.writeByte(FUNCTION);
+    write(stmt.name);
+    writeTokens(stmt.params);
+    writeStatements(stmt.body);
+    out.writeInt(stmt.slot);
+    out.writeInt(stmt.frameSize);
+    out.writeInt(stmt.firstCapturedSlot);
+    out.writeInt(stmt.captures.size());
+    for (Capture capture : stmt.captures) {
+      out.writeBoolean(capture.isLocal());
+      out.writeInt(capture.index());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    out.writeByte(IF);
+    write(stmt.condition);
+    write(stmt.thenBranch);
+    write(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    out.writeByte(PRINT);
+    write(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    out.writeByte(RETURN);
+    write(stmt.keyword);
+    write(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    out.writeByte(VAR);
+    write(stmt.name);
+    write(stmt.initializer);
+    out.writeInt(stmt.slot);
+    out.writeBoolean(stmt.assigned);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    out.writeByte(WHILE);
+    write(stmt.keyword);
+    write(stmt.condition);
+    write(stmt.body);
+    write(stmt.increment);
+    return null;
+  }
+}
@@ -0,0 +1,268 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * How the {@link Interpreter} executes a particular {@link Expr.Binary}.
+ *
+ * <p>Every binary expression starts out {@link #UNINITIALIZED}. The first time it executes, it
+ * looks at the types of its operands and rewrites itself into a node specialized for them, such as
+ * {@link AddDoubles} or {@link ConcatStrings}, which only has to check that its guess still holds.
+ * If a later execution sees operands of other types, the expression gives up on specializing and
+ * rewrites itself for good into the {@link Generic} node, which handles every combination.
+ *
+ * <p>Nodes specialized for numbers evaluate their operands with {@link Interpreter#evaluateDouble},
+ * and arithmetic ones can hand their result to a parent node the same way, so a whole tree of
+ * arithmetic only boxes the number at its root.
+ */
+abstract sealed class BinaryNode {
+
+  static final BinaryNode UNINITIALIZED = new Uninitialized();
+
+  abstract Object execute(Interpreter interpreter, Expr.Binary expr);
+
+  /**
+   * Executes {@code expr} for a caller that expects a number, throwing {@link UnexpectedResult}
+   * with the value if it isn't one.
+   */
+  double executeDouble(Interpreter interpreter, Expr.Binary expr) throws UnexpectedResult {
+    return Interpreter.expectDouble(execute(interpreter, expr));
+  }
+
+  /** Rewrites {@code expr} into the generic node after a failed guess, and executes it. */
+  static Object generalize(Expr.Binary expr, Object left, Object right) {
+    expr.node = Generic.INSTANCE;
+    return Generic.apply(expr, left, right);
+  }
+
+  private static final class Uninitialized extends BinaryNode {
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      expr.node = specialize(expr.operator.type(), left, right);
+      return Generic.apply(expr, left, right);
+    }
+
+    private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+      if (left instanceof Double && right instanceof Double) {
+        return switch (operator) {
+          case PLUS -> AddDoubles.INSTANCE;
+          case MINUS -> SubtractDoubles.INSTANCE;
+          case STAR -> MultiplyDoubles.INSTANCE;
+          case SLASH -> DivideDoubles.INSTANCE;
+          case GREATER -> GreaterDoubles.INSTANCE;
+          case GREATER_EQUAL -> GreaterEqualDoubles.INSTANCE;
+          case LESS -> LessDoubles.INSTANCE;
+          case LESS_EQUAL -> LessEqualDoubles.INSTANCE;
+          default -> Generic.INSTANCE;
+        };
+      }
+
+      if (operator == TokenType.PLUS && Rope.isString(left) && Rope.isString(right)) {
+        return ConcatStrings.INSTANCE;
+      }
+
+      return Generic.INSTANCE;
+    }
+  }
+
+  /** A node for an operator that takes two numbers and returns a number. */
+  abstract static sealed class Arithmetic extends BinaryNode {
+    abstract double apply(double left, double right);
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+      try {
+        return executeDouble(interpreter, expr);
+      } catch (UnexpectedResult e) {
+        return e.value;
+      }
+    }
+
+    @Override
+    double executeDouble(Interpreter interpreter, Expr.Binary expr) throws UnexpectedResult {
+      double left;
+      try {
+        left = interpreter.evaluateDouble(expr.left);
+      } catch (UnexpectedResult e) {
+        Object right = interpreter.evaluate(expr.right);
+        return Interpreter.expectDouble(generalize(expr, e.value, right));
+      }
+
+      double right;
+      try {
+        right = interpreter.evaluateDouble(expr.right);
+      } catch (UnexpectedResult e) {
+        return Interpreter.expectDouble(generalize(expr, left, e.value));
+      }
+
+      return apply(left, right);
+    }
+  }
+
+  /** A node for an operator that compares two numbers. */
+  abstract static sealed class Comparison extends BinaryNode {
+    abstract boolean apply(double left, double right);
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+      double left;
+      try {
+        left = interpreter.evaluateDouble(expr.left);
+      } catch (UnexpectedResult e) {
+        return generalize(expr, e.value, interpreter.evaluate(expr.right));
+      }
+
+      double right;
+      try {
+        right = interpreter.evaluateDouble(expr.right);
+      } catch (UnexpectedResult e) {
+        return generalize(expr, left, e.value);
+      }
+
+      return apply(left, right);
+    }
+  }
+
+  static final class AddDoubles extends Arithmetic {
+    static final AddDoubles INSTANCE = new AddDoubles();
+
+    @Override
+    double apply(double left, double right) {
+      return left + right;
+    }
+  }
+
+  static final class ConcatStrings extends BinaryNode {
+    static final ConcatStrings INSTANCE = new ConcatStrings();
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      if (Rope.isString(left) && Rope.isString(right)) {
+        return Rope.concat(left, right);
+      }
+      return generalize(expr, left, right);
+    }
+  }
+
+  static final class SubtractDoubles extends Arithmetic {
+    static final SubtractDoubles INSTANCE = new SubtractDoubles();
+
+    @Override
+    double apply(double left, double right) {
+      return left - right;
+    }
+  }
+
+  static final class MultiplyDoubles extends Arithmetic {
+    static final MultiplyDoubles INSTANCE = new MultiplyDoubles();
+
+    @Override
+    double apply(double left, double right) {
+      return left * right;
+    }
+  }
+
+  static final class DivideDoubles extends Arithmetic {
+    static final DivideDoubles INSTANCE = new DivideDoubles();
+
+    @Override
+    double apply(double left, double right) {
+      return left / right;
+    }
+  }
+
+  static final class GreaterDoubles extends Comparison {
+    static final GreaterDoubles INSTANCE = new GreaterDoubles();
+
+    @Override
+    boolean apply(double left, double right) {
+      return left > right;
+    }
+  }
+
+  static final class GreaterEqualDoubles extends Comparison {
+    static final GreaterEqualDoubles INSTANCE = new GreaterEqualDoubles();
+
+    @Override
+    boolean apply(double left, double right) {
+      return left >= right;
+    }
+  }
+
+  static final class LessDoubles extends Comparison {
+    static final LessDoubles INSTANCE = new LessDoubles();
+
+    @Override
+    boolean apply(double left, double right) {
+      return left < right;
+    }
+  }
+
+  static final class LessEqualDoubles extends Comparison {
+    static final LessEqualDoubles INSTANCE = new LessEqualDoubles();
+
+    @Override
+    boolean apply(double left, double right) {
+      return left <= right;
+    }
+  }
+
+  /** Executes any binary expression on operands of any types. */
+  static final class Generic extends BinaryNode {
+    static final Generic INSTANCE = new Generic();
+
+    @Override
+    Object execute(Interpreter interpreter, Expr.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      return apply(expr, left, right);
+    }
+
+    static Object apply(Expr.Binary expr, Object left, Object right) {
+      switch (expr.operator.type()) {
+        case GREATER:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left > (double) right;
+        case GREATER_EQUAL:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left >= (double) right;
+        case LESS:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left < (double) right;
+        case LESS_EQUAL:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left <= (double) right;
+        case BANG_EQUAL:
+          return !Interpreter.isEqual(left, right);
+        case EQUAL_EQUAL:
+          return Interpreter.isEqual(left, right);
+        case MINUS:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left - (double) right;
+        case PLUS:
+          {
+            if (left instanceof Double && right instanceof Double) {
+              return (Double) left + (Double) right;
+            }
+
+            if (Rope.isString(left) && Rope.isString(right)) {
+              return Rope.concat(left, right);
+            }
+
+            throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+          }
+        case SLASH:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left / (double) right;
+        case STAR:
+          Interpreter.checkNumberOperands(expr.operator, left, right);
+          return (double) left * (double) right;
+      }
+
+      // Unreachable.
+      return null;
+    }
+  }
+}
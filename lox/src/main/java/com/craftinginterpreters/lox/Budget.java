@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import java.time.Duration;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * How long a run of a program may go on for: how many steps it may take, how long it may take, and
+ * whether its thread has been interrupted. Exceeding any of them stops the run with a runtime
+ * error, so a script that never ends can't keep its thread forever.
+ *
+ * <p>A step is one iteration of a loop or one call of a function. Those are the only places where
+ * a program can go on running indefinitely, and both are cheap to count. The clock and the thread
+ * are only checked every {@link #CHECK_INTERVAL} steps, so they cost next to nothing either.
+ */
+final class Budget {
+  private static final int CHECK_INTERVAL = 1024;
+
+  /** The steps left to take once {@link #countdown} runs out. */
+  private long stepsLeft = Long.MAX_VALUE;
+
+  /** The steps left to take before the budget is next checked. */
+  private int countdown = 0;
+
+  /** When the run must end by, as a {@link System#nanoTime} value, if it has a timeout. */
+  private long deadline;
+
+  private boolean hasDeadline = false;
+
+  /**
+   * Starts a run that may take up to {@code maxSteps} steps, and up to {@code timeout} if it isn't
+   * null.
+   */
+  void start(long maxSteps, @Nullable Duration timeout) {
+    if (maxSteps < 0) {
+      throw new IllegalArgumentException("maxSteps must not be negative: " + maxSteps);
+    }
+    stepsLeft = maxSteps;
+    countdown = 0;
+    hasDeadline = timeout != null;
+    if (timeout != null) {
+      deadline = System.nanoTime() + timeout.toNanos();
+    }
+  }
+
+  /** Takes a step of the running program at {@code line}, or stops it if it's out of budget. */
+  void step(int line) {
+    if (--countdown < 0) {
+      check(line);
+    }
+  }
+
+  private void check(int line) {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new RuntimeError(line, "Interrupted.");
+    }
+    if (hasDeadline && System.nanoTime() - deadline >= 0) {
+      throw new RuntimeError(line, "Ran out of time.");
+    }
+    if (stepsLeft == 0) {
+      throw new RuntimeError(line, "Ran out of steps.");
+    }
+
+    // This step comes out of the next interval.
+    int interval = (int) Math.min(stepsLeft, CHECK_INTERVAL);
+    stepsLeft -= interval;
+    countdown = interval - 1;
+  }
+}
@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The native functions that every program starts out with, each defined as a global named {@link
+ * #loxName}.
+ *
+ * <p>They're constants, rather than objects made afresh for each {@link Interpreter}, so that a
+ * {@link SnapshotWriter snapshot} can refer to one by name.
+ */
+enum Builtin implements LoxCallable {
+  CLOCK("clock") {
+    @Override
+    public int arity() {
+      return 0;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+      return call0(interpreter);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      return (double) System.currentTimeMillis() / 1_000.0;
+    }
+  };
+
+  final String loxName;
+
+  Builtin(String loxName) {
+    this.loxName = loxName;
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn>";
+  }
+}
@@ -0,0 +1,689 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Compiles a resolved program into bytecode for the {@link VirtualMachine}.
+ *
+ * <p>The {@link Resolver} has already reported every static error, so all this has to do is lay
+ * out the variables. Globals are looked up by name, as in the {@link Interpreter}. Locals live in
+ * stack slots of their function's call frame, and are moved to the heap only when a closure that
+ * captured them outlives their scope.
+ */
+final class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  private static final int MAX_OPERAND = 0xffff;
+
+  private enum FunctionType {
+    SCRIPT,
+    FUNCTION,
+    INITIALIZER,
+    METHOD
+  }
+
+  private static final class Local {
+    final String name;
+    final int depth;
+    boolean captured = false;
+
+    Local(String name, int depth) {
+      this.name = requireNonNull(name);
+      this.depth = depth;
+    }
+  }
+
+  private record Upvalue(boolean isLocal, int index) {}
+
+  /** A loop being compiled, and the jumps out of its body that are waiting for their targets. */
+  private static final class Loop {
+    final @Nullable Loop enclosing;
+
+    /** How many locals were in scope outside the loop, which break and continue go back to. */
+    final int localCount;
+
+    final List<Integer> breakJumps = new ArrayList<>();
+    final List<Integer> continueJumps = new ArrayList<>();
+
+    Loop(@Nullable Loop enclosing, int localCount) {
+      this.enclosing = enclosing;
+      this.localCount = localCount;
+    }
+  }
+
+  /** The function being compiled, and the functions it is nested in. */
+  private static final class FunctionState {
+    final @Nullable FunctionState enclosing;
+    final FunctionType type;
+    final Chunk chunk = new Chunk();
+    final List<Local> locals = new ArrayList<>();
+    final List<Upvalue> upvalues = new ArrayList<>();
+    @Nullable Loop loop = null;
+    int scopeDepth = 0;
+    int stackSize = 0;
+    int maxStackSize = 0;
+
+    FunctionState(@Nullable FunctionState enclosing, FunctionType type) {
+      this.enclosing = enclosing;
+      this.type = type;
+
+      // Slot zero holds the function being called, or the instance that a method was called on.
+      boolean isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+      locals.add(new Local(isMethod ? "this" : "", 0));
+    }
+  }
+
+  private final ErrorReporter errors;
+  private FunctionState current = new FunctionState(null, FunctionType.SCRIPT);
+
+  /** The line of the last token compiled, which runtime errors are reported against. */
+  private int line = 0;
+
+  BytecodeCompiler(ErrorReporter errors) {
+    this.errors = requireNonNull(errors);
+  }
+
+  BytecodeFunction compile(List<Stmt> statements) {
+    statements.forEach(this::compile);
+    emitReturn();
+    return endFunction("script", 0);
+  }
+
+  private void compile(Stmt stmt) {
+    // Between statements, the only values on the stack are the locals in scope.
+    current.stackSize = current.locals.size();
+    stmt.accept(this);
+  }
+
+  private void compile(Expr expr) {
+    expr.accept(this);
+  }
+
+  private BytecodeFunction endFunction(String name, int arity) {
+    var function =
+        new BytecodeFunction(
+            name, arity, current.upvalues.size(), current.chunk, current.maxStackSize);
+    current = current.enclosing;
+    return function;
+  }
+
+  private void beginScope() {
+    current.scopeDepth++;
+  }
+
+  private void endScope() {
+    current.scopeDepth--;
+
+    List<Local> locals = current.locals;
+    while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+      if (locals.get(locals.size() - 1).captured) {
+        emitOp(OpCode.CLOSE_UPVALUE, -1);
+      } else {
+        emitOp(OpCode.POP, -1);
+      }
+      locals.remove(locals.size() - 1);
+    }
+  }
+
+  /**
+   * Discards the locals declared since there were {@code localCount} of them, without taking them
+   * out of scope, for a jump out of the scopes they are in.
+   */
+  private void discardLocals(int localCount) {
+    List<Local> locals = current.locals;
+    for (int i = locals.size() - 1; i >= localCount; i--) {
+      emitOp(locals.get(i).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP, -1);
+    }
+  }
+
+  private boolean isGlobalScope() {
+    return current.enclosing == null && current.scopeDepth == 0;
+  }
+
+  private void addLocal(String name) {
+    if (current.locals.size() > MAX_OPERAND) {
+      errors.error(line, "Too many local variables in function.");
+      return;
+    }
+    current.locals.add(new Local(name, current.scopeDepth));
+  }
+
+  private static int resolveLocal(FunctionState function, String name) {
+    for (int i = function.locals.size() - 1; i >= 0; i--) {
+      if (function.locals.get(i).name.equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int resolveUpvalue(FunctionState function, String name) {
+    if (function.enclosing == null) {
+      return -1;
+    }
+
+    int local = resolveLocal(function.enclosing, name);
+    if (local != -1) {
+      function.enclosing.locals.get(local).captured = true;
+      return addUpvalue(function, true, local);
+    }
+
+    int upvalue = resolveUpvalue(function.enclosing, name);
+    if (upvalue != -1) {
+      return addUpvalue(function, false, upvalue);
+    }
+
+    return -1;
+  }
+
+  private static int addUpvalue(FunctionState function, boolean isLocal, int index) {
+    var upvalue = new Upvalue(isLocal, index);
+    int existing = function.upvalues.indexOf(upvalue);
+    if (existing != -1) {
+      return existing;
+    }
+    function.upvalues.add(upvalue);
+    return function.upvalues.size() - 1;
+  }
+
+  private void getVariable(String name, boolean global) {
+    accessVariable(name, global, OpCode.GET_GLOBAL, OpCode.GET_LOCAL, OpCode.GET_UPVALUE, +1);
+  }
+
+  private void setVariable(String name, boolean global) {
+    accessVariable(name, global, OpCode.SET_GLOBAL, OpCode.SET_LOCAL, OpCode.SET_UPVALUE, 0);
+  }
+
+  private void accessVariable(
+      String name, boolean global, byte globalOp, byte localOp, byte upvalueOp, int stackEffect) {
+    if (global) {
+      emitOp(globalOp, stackEffect);
+      emitShort(nameConstant(name));
+      return;
+    }
+
+    int slot = resolveLocal(current, name);
+    if (slot != -1) {
+      emitOp(localOp, stackEffect);
+      emitShort(slot);
+      return;
+    }
+
+    int upvalue = resolveUpvalue(current, name);
+    if (upvalue == -1) {
+      throw new AssertionError("The Resolver found local variable '" + name + "', but we didn't");
+    }
+    emitOp(upvalueOp, stackEffect);
+    emitShort(upvalue);
+  }
+
+  private void function(Stmt.Function stmt, FunctionType type) {
+    current = new FunctionState(current, type);
+    beginScope();
+    for (Token param : stmt.params) {
+      addLocal(param.lexeme());
+    }
+    stmt.body.forEach(this::compile);
+    emitReturn();
+
+    FunctionState compiled = current;
+    BytecodeFunction function = endFunction(stmt.name.lexeme(), stmt.params.size());
+
+    emitOp(OpCode.CLOSURE, +1);
+    emitShort(makeConstant(function));
+    for (Upvalue upvalue : compiled.upvalues) {
+      emitByte(upvalue.isLocal() ? 1 : 0);
+      emitShort(upvalue.index());
+    }
+  }
+
+  /**
+   * Whether evaluating {@code expr} can neither fail nor have side effects, so that it makes no
+   * difference whether it is evaluated before or after a method is looked up.
+   */
+  private static boolean isTrivial(Expr expr) {
+    return switch (expr) {
+      case Expr.Literal literal -> true;
+      case Expr.This thisExpr -> true;
+      case Expr.Variable variable -> variable.depth != -1;
+      case Expr.Grouping grouping -> isTrivial(grouping.expression);
+      default -> false;
+    };
+  }
+
+  private boolean canInvoke(Token name, Expr.Call call) {
+    // Looking up the method and calling it is one instruction, so any runtime error from either
+    // half is reported against the same line.
+    return name.line() == call.paren.line()
+        && call.arguments.stream().allMatch(BytecodeCompiler::isTrivial);
+  }
+
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    compile(expr.value);
+    line = expr.name.line();
+    setVariable(expr.name.lexeme(), expr.depth == -1);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    compile(expr.left);
+    compile(expr.right);
+
+    line = expr.operator.line();
+    switch (expr.operator.type()) {
+      case BANG_EQUAL -> {
+        emitOp(OpCode.EQUAL, -1);
+        emitOp(OpCode.NOT, 0);
+      }
+      case EQUAL_EQUAL -> emitOp(OpCode.EQUAL, -1);
+      case GREATER -> emitOp(OpCode.GREATER, -1);
+      case GREATER_EQUAL -> emitOp(OpCode.GREATER_EQUAL, -1);
+      case LESS -> emitOp(OpCode.LESS, -1);
+      case LESS_EQUAL -> emitOp(OpCode.LESS_EQUAL, -1);
+      case PLUS -> emitOp(OpCode.ADD, -1);
+      case MINUS -> emitOp(OpCode.SUBTRACT, -1);
+      case STAR -> emitOp(OpCode.MULTIPLY, -1);
+      case SLASH -> emitOp(OpCode.DIVIDE, -1);
+      default -> throw new AssertionError("Unhandled binary operator " + expr.operator.type());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    int argCount = expr.arguments.size();
+
+    if (expr.callee instanceof Expr.Get get && canInvoke(get.name, expr)) {
+      compile(get.object);
+      expr.arguments.forEach(this::compile);
+      line = get.name.line();
+      emitOp(OpCode.INVOKE, -argCount);
+      emitShort(nameConstant(get.name.lexeme()));
+      emitByte(argCount);
+      return null;
+    }
+
+    if (expr.callee instanceof Expr.Super superExpr && canInvoke(superExpr.method, expr)) {
+      getVariable("this", false);
+      expr.arguments.forEach(this::compile);
+      getVariable("super", false);
+      line = superExpr.method.line();
+      emitOp(OpCode.SUPER_INVOKE, -argCount - 1);
+      emitShort(nameConstant(superExpr.method.lexeme()));
+      emitByte(argCount);
+      return null;
+    }
+
+    compile(expr.callee);
+    expr.arguments.forEach(this::compile);
+    line = expr.paren.line();
+    emitOp(OpCode.CALL, -argCount);
+    emitByte(argCount);
+    return null;
+  }
+
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    compile(expr.object);
+    line = expr.name.line();
+    emitOp(OpCode.GET_PROPERTY, 0);
+    emitShort(nameConstant(expr.name.lexeme()));
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    compile(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value == null) {
+      emitOp(OpCode.NIL, +1);
+    } else if (expr.value.equals(true)) {
+      emitOp(OpCode.TRUE, +1);
+    } else if (expr.value.equals(false)) {
+      emitOp(OpCode.FALSE, +1);
+    } else {
+      emitOp(OpCode.CONSTANT, +1);
+      emitShort(makeConstant(expr.value));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitLogicalExpr(Expr.Logical expr) {
+    compile(expr.left);
+
+    if (expr.operator.type() == TokenType.OR) {
+      int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+      int endJump = emitJump(OpCode.JUMP);
+      patchJump(elseJump);
+      emitOp(OpCode.POP, -1);
+      compile(expr.right);
+      patchJump(endJump);
+    } else if (expr.operator.type() == TokenType.AND) {
+      int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+      emitOp(OpCode.POP, -1);
+      compile(expr.right);
+      patchJump(endJump);
+    } else {
+      throw new AssertionError("Unhandled logical expression");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitSetExpr(Expr.Set expr) {
+    compile(expr.object);
+    compile(expr.value);
+    line = expr.name.line();
+    emitOp(OpCode.SET_PROPERTY, -1);
+    emitShort(nameConstant(expr.name.lexeme()));
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    getVariable("this", false);
+    getVariable("super", false);
+    line = expr.method.line();
+    emitOp(OpCode.GET_SUPER, -1);
+    emitShort(nameConstant(expr.method.lexeme()));
+    return null;
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    getVariable("this", false);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    compile(expr.right);
+    line = expr.operator.line();
+    switch (expr.operator.type()) {
+      case MINUS -> emitOp(OpCode.NEGATE, 0);
+      case BANG -> emitOp(OpCode.NOT, 0);
+      default -> throw new AssertionError("Unhandled unary operator " + expr.operator.type());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    line = expr.name.line();
+    getVariable(expr.name.lexeme(), expr.depth == -1);
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    beginScope();
+    stmt.statements.forEach(this::compile);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    // The Resolver reports a break outside of a loop.
+    Loop loop = requireNonNull(current.loop);
+    discardLocals(loop.localCount);
+    loop.breakJumps.add(emitJump(OpCode.JUMP));
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    String name = stmt.name.lexeme();
+    boolean global = isGlobalScope();
+
+    line = stmt.name.line();
+    if (stmt.superclass == null) {
+      if (!global) {
+        addLocal(name);
+      }
+      emitClass(name);
+      if (global) {
+        emitOp(OpCode.DEFINE_GLOBAL, -1);
+        emitShort(nameConstant(name));
+      }
+      getVariable(name, global);
+    } else if (global) {
+      // Methods find their superclass in a local named "super", which they capture like any other
+      // variable. A global class is only defined once its superclass has been checked, as in the
+      // Interpreter, so a class with a bad superclass is never left behind.
+      beginScope();
+      compile(stmt.superclass);
+      addLocal("super");
+
+      line = stmt.name.line();
+      emitClass(name);
+      line = stmt.superclass.name.line();
+      emitOp(OpCode.INHERIT, 0);
+      line = stmt.name.line();
+      emitOp(OpCode.DEFINE_GLOBAL, -1);
+      emitShort(nameConstant(name));
+      getVariable(name, true);
+    } else {
+      // A local class needs its slot below "super". If the superclass is bad, the error ends the
+      // script, and the local with it.
+      addLocal(name);
+      emitClass(name);
+      beginScope();
+      compile(stmt.superclass);
+      addLocal("super");
+
+      getVariable(name, false);
+      line = stmt.superclass.name.line();
+      emitOp(OpCode.INHERIT, 0);
+    }
+
+    for (Stmt.Function method : stmt.methods) {
+      String methodName = method.name.lexeme();
+      function(method, methodName.equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD);
+      emitOp(OpCode.METHOD, -1);
+      emitShort(nameConstant(methodName));
+    }
+    emitOp(OpCode.POP, -1);
+
+    if (stmt.superclass != null) {
+      endScope();
+    }
+    return null;
+  }
+
+  private void emitClass(String name) {
+    emitOp(OpCode.CLASS, +1);
+    emitShort(makeConstant(name));
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    // The Resolver reports a continue outside of a loop.
+    Loop loop = requireNonNull(current.loop);
+    discardLocals(loop.localCount);
+    loop.continueJumps.add(emitJump(OpCode.JUMP));
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expression);
+    emitOp(OpCode.POP, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    // A local function is in scope in its own body, so it can call itself.
+    boolean global = isGlobalScope();
+    if (!global) {
+      addLocal(stmt.name.lexeme());
+    }
+
+    function(stmt, FunctionType.FUNCTION);
+
+    if (global) {
+      emitOp(OpCode.DEFINE_GLOBAL, -1);
+      emitShort(nameConstant(stmt.name.lexeme()));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    compile(stmt.condition);
+
+    int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+    emitOp(OpCode.POP, -1);
+    compile(stmt.thenBranch);
+    int elseJump = emitJump(OpCode.JUMP);
+
+    patchJump(thenJump);
+    emitOp(OpCode.POP, -1);
+    if (stmt.elseBranch != null) {
+      compile(stmt.elseBranch);
+    }
+    patchJump(elseJump);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expression);
+    emitOp(OpCode.PRINT, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    line = stmt.keyword.line();
+    if (stmt.value == null) {
+      emitReturn();
+    } else {
+      compile(stmt.value);
+      emitOp(OpCode.RETURN, -1);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer != null) {
+      compile(stmt.initializer);
+    } else {
+      emitOp(OpCode.NIL, +1);
+    }
+
+    line = stmt.name.line();
+    if (isGlobalScope()) {
+      emitOp(OpCode.DEFINE_GLOBAL, -1);
+      emitShort(nameConstant(stmt.name.lexeme()));
+    } else {
+      // The initializer's value is left on the stack, in the new local's slot.
+      addLocal(stmt.name.lexeme());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    int loopStart = current.chunk.count;
+    compile(stmt.condition);
+
+    int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+    emitOp(OpCode.POP, -1);
+    var loop = new Loop(current.loop, current.locals.size());
+    current.loop = loop;
+    compile(stmt.body);
+    current.loop = loop.enclosing;
+
+    loop.continueJumps.forEach(this::patchJump);
+    if (stmt.increment != null) {
+      compile(stmt.increment);
+      emitOp(OpCode.POP, -1);
+    }
+    // The loop's budget step is taken at the LOOP, so an error there reports the loop's line.
+    line = stmt.keyword.line();
+    emitLoop(loopStart);
+
+    patchJump(exitJump);
+    emitOp(OpCode.POP, -1);
+    loop.breakJumps.forEach(this::patchJump);
+    return null;
+  }
+
+  private void emitReturn() {
+    if (current.type == FunctionType.INITIALIZER) {
+      emitOp(OpCode.GET_LOCAL, +1);
+      emitShort(0);
+    } else {
+      emitOp(OpCode.NIL, +1);
+    }
+    emitOp(OpCode.RETURN, -1);
+  }
+
+  /** Emits an instruction, tracking how many values it pushes onto or pops off the stack. */
+  private void emitOp(byte op, int stackEffect) {
+    current.chunk.write(op, line);
+    current.stackSize += stackEffect;
+    current.maxStackSize = Math.max(current.maxStackSize, current.stackSize);
+  }
+
+  private void emitByte(int value) {
+    current.chunk.write(value, line);
+  }
+
+  private void emitShort(int value) {
+    current.chunk.writeShort(value, line);
+  }
+
+  private int emitJump(byte op) {
+    emitOp(op, 0);
+    emitShort(MAX_OPERAND);
+    return current.chunk.count - 2;
+  }
+
+  private void patchJump(int offset) {
+    int jump = current.chunk.count - offset - 2;
+    if (jump > MAX_OPERAND) {
+      errors.error(line, "Too much code to jump over.");
+    }
+    current.chunk.patchShort(offset, jump);
+  }
+
+  private void emitLoop(int loopStart) {
+    emitOp(OpCode.LOOP, 0);
+    int offset = current.chunk.count - loopStart + 2;
+    if (offset > MAX_OPERAND) {
+      errors.error(line, "Loop body too large.");
+    }
+    emitShort(offset);
+  }
+
+  /**
+   * Adds the {@link SymbolTable symbol} for {@code name} to the constants, which is how the
+   * instructions that look something up by name refer to it.
+   */
+  private int nameConstant(String name) {
+    return makeConstant(SymbolTable.intern(name));
+  }
+
+  private int makeConstant(Object value) {
+    int constant = current.chunk.addConstant(value);
+    if (constant > MAX_OPERAND) {
+      errors.error(line, "Too many constants in one chunk.");
+      return 0;
+    }
+    return constant;
+  }
+}
@@ -0,0 +1,27 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+/** A function compiled by the {@link BytecodeCompiler}, before it is closed over at runtime. */
+final class BytecodeFunction {
+  final String name;
+  final int arity;
+  final int upvalueCount;
+  final Chunk chunk;
+
+  /** The most stack slots a call to this function uses, counting its locals. */
+  final int maxStackSize;
+
+  BytecodeFunction(String name, int arity, int upvalueCount, Chunk chunk, int maxStackSize) {
+    this.name = requireNonNull(name);
+    this.arity = arity;
+    this.upvalueCount = upvalueCount;
+    this.chunk = requireNonNull(chunk);
+    this.maxStackSize = maxStackSize;
+  }
+
+  @Override
+  public String toString() {
+    return "<fn " + name + ">";
+  }
+}
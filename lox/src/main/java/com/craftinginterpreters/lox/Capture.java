@@ -0,0 +1,11 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Where a function finds one of the variables it captures from enclosing functions, when a closure
+ * of it is created.
+ *
+ * <p>If {@code isLocal}, the variable is declared by the function that creates the closure, in
+ * slot {@code index} of that function's frame. Otherwise the creating function captured the
+ * variable itself, as its upvalue {@code index}.
+ */
+record Capture(boolean isLocal, int index) {}
@@ -0,0 +1,55 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A function's bytecode: the instructions, the source line of each byte for runtime errors, and
+ * the constants the instructions refer to by index.
+ */
+final class Chunk {
+  byte[] code = new byte[64];
+  int[] lines = new int[64];
+  int count = 0;
+  Object[] constants = new Object[8];
+  private int constantCount = 0;
+  private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+  void write(int value, int line) {
+    if (count == code.length) {
+      code = Arrays.copyOf(code, count * 2);
+      lines = Arrays.copyOf(lines, count * 2);
+    }
+    code[count] = (byte) value;
+    lines[count] = line;
+    count++;
+  }
+
+  void writeShort(int value, int line) {
+    write(value >> 8, line);
+    write(value, line);
+  }
+
+  void patchShort(int offset, int value) {
+    code[offset] = (byte) (value >> 8);
+    code[offset + 1] = (byte) value;
+  }
+
+  /** Adds a constant, reusing the index of an equal one that was already added. */
+  int addConstant(Object value) {
+    // Functions are never equal to each other, so there is no point hashing them.
+    if (value instanceof BytecodeFunction) {
+      return appendConstant(value);
+    }
+    return constantIndexes.computeIfAbsent(value, this::appendConstant);
+  }
+
+  private int appendConstant(Object value) {
+    if (constantCount == constants.length) {
+      constants = Arrays.copyOf(constants, constantCount * 2);
+    }
+    constants[constantCount] = value;
+    return constantCount++;
+  }
+}
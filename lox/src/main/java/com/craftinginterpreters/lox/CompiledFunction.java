@@ -0,0 +1,76 @@
+package com.craftinginterpreters.lox;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A Lox function's body compiled to JVM bytecode by the {@link JitCompiler}.
+ *
+ * <p>It is called with the upvalues of the function's closure and, if the function is a method,
+ * the instance to use as "this". A compiled function implements the entry point for its number of
+ * parameters, and the other entry points pass their arguments along to that one, so a caller can
+ * use whichever is most convenient.
+ */
+interface CompiledFunction {
+  default Object call(
+      Interpreter interpreter,
+      Upvalue[] upvalues,
+      @Nullable LoxInstance receiver,
+      Object[] arguments) {
+    return switch (arguments.length) {
+      case 0 -> call0(interpreter, upvalues, receiver);
+      case 1 -> call1(interpreter, upvalues, receiver, arguments[0]);
+      case 2 -> call2(interpreter, upvalues, receiver, arguments[0], arguments[1]);
+      case 3 -> call3(interpreter, upvalues, receiver, arguments[0], arguments[1], arguments[2]);
+      case 4 ->
+          call4(
+              interpreter,
+              upvalues,
+              receiver,
+              arguments[0],
+              arguments[1],
+              arguments[2],
+              arguments[3]);
+      default -> throw new AssertionError("No entry point for " + arguments.length + " arguments");
+    };
+  }
+
+  default Object call0(
+      Interpreter interpreter, Upvalue[] upvalues, @Nullable LoxInstance receiver) {
+    return call(interpreter, upvalues, receiver, new Object[] {});
+  }
+
+  default Object call1(
+      Interpreter interpreter, Upvalue[] upvalues, @Nullable LoxInstance receiver, Object a0) {
+    return call(interpreter, upvalues, receiver, new Object[] {a0});
+  }
+
+  default Object call2(
+      Interpreter interpreter,
+      Upvalue[] upvalues,
+      @Nullable LoxInstance receiver,
+      Object a0,
+      Object a1) {
+    return call(interpreter, upvalues, receiver, new Object[] {a0, a1});
+  }
+
+  default Object call3(
+      Interpreter interpreter,
+      Upvalue[] upvalues,
+      @Nullable LoxInstance receiver,
+      Object a0,
+      Object a1,
+      Object a2) {
+    return call(interpreter, upvalues, receiver, new Object[] {a0, a1, a2});
+  }
+
+  default Object call4(
+      Interpreter interpreter,
+      Upvalue[] upvalues,
+      @Nullable LoxInstance receiver,
+      Object a0,
+      Object a1,
+      Object a2,
+      Object a3) {
+    return call(interpreter, upvalues, receiver, new Object[] {a0, a1, a2, a3});
+  }
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * How the {@link Interpreter} finished executing a statement, which tells the statements around it
+ * whether to carry on with the next one.
+ *
+ * <p>Anything other than {@link #NORMAL} is passed outwards by every statement it passes through,
+ * until it reaches the loop it breaks out of or continues, or the function it returns from.
+ */
+enum Completion {
+  NORMAL,
+
+  /** A "return" statement ran. The Interpreter holds on to the value being returned. */
+  RETURN,
+
+  BREAK,
+  CONTINUE
+}
@@ -1,68 +1,85 @@
 package com.craftinginterpreters.lox;
 
-import static java.util.Objects.requireNonNull;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import org.jspecify.annotations.Nullable;
 
+/**
+ * The global variables.
+ *
+ * <p>Globals are looked up by name, because they are late bound: a function can refer to a global
+ * that is only defined after the function itself. Every other variable lives in a slot of the
+ * {@link ValueStack}, which the {@link Resolver} numbers ahead of time.
+ *
+ * <p>Globals are kept in a {@link SymbolMap} keyed on their names' {@link SymbolTable symbols}, so
+ * looking one up is usually a single probe of an array. The map only holds the globals that have
+ * been defined here, however many names every other program in the JVM has used.
+ */
 final class Environment {
-  final @Nullable Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
-
-  Environment() {
-    this.enclosing = null;
+  private SymbolMap<@Nullable Object> values = new SymbolMap<>();
+
+  /** Whether {@link #values} is shared with other globals, and must be copied before writing. */
+  private boolean shared = false;
+
+  /**
+   * Returns globals with the same values as these, which share them with these until either is
+   * written to.
+   */
+  Environment fork() {
+    var fork = new Environment();
+    fork.values = values;
+    fork.shared = true;
+    shared = true;
+    return fork;
   }
 
-  Environment(Environment enclosing) {
-    this.enclosing = requireNonNull(enclosing);
+  private void unshare() {
+    if (shared) {
+      values = new SymbolMap<>(values);
+      shared = false;
+    }
   }
 
-  void define(String name, Object value) {
-    values.put(requireNonNull(name), value);
+  void define(int symbol, @Nullable Object value) {
+    unshare();
+    values.put(symbol, value);
   }
 
-  Object getAt(int distance, String name) {
-    return ancestor(distance).values.get(name);
+  boolean isDefined(int symbol) {
+    return values.containsKey(symbol);
   }
 
-  void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme(), value);
+  /** Returns the symbols of the globals defined here, from lowest to highest. */
+  int[] symbols() {
+    int[] symbols = values.keys();
+    Arrays.sort(symbols);
+    return symbols;
   }
 
-  Environment ancestor(int distance) {
-    var environment = this;
-    for (int i = 0; i < distance; i++) {
-      // We're trusting that Resolver gave us the correct distance to get to the Environment that
-      // has the variable we're interested in.
-      environment = requireNonNull(environment).enclosing;
-    }
-
-    return environment;
+  /** Returns the value of the global named by {@code symbol}, which must be defined. */
+  @Nullable Object get(int symbol) {
+    return values.get(symbol);
   }
 
-  Object get(Token name) {
-    if (values.containsKey(name.lexeme())) {
-      return values.get(name.lexeme());
-    }
+  /** Changes the value of the global named by {@code symbol}, which must be defined. */
+  void set(int symbol, @Nullable Object value) {
+    unshare();
+    values.put(symbol, value);
+  }
 
-    if (enclosing != null) {
-      return enclosing.get(name);
+  @Nullable Object get(Token name) {
+    Object value = values.get(name.symbol());
+    // Only a global that is nil needs a second look, to tell it from one that isn't defined.
+    if (value != null || values.containsKey(name.symbol())) {
+      return value;
     }
 
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
   }
 
-  void assign(Token name, Object value) {
-    requireNonNull(name);
-
-    if (values.containsKey(name.lexeme())) {
-      values.put(name.lexeme(), value);
-      return;
-    }
-
-    if (enclosing != null) {
-      enclosing.assign(name, value);
+  void assign(Token name, @Nullable Object value) {
+    if (values.containsKey(name.symbol())) {
+      unshare();
+      values.put(name.symbol(), value);
       return;
     }
 
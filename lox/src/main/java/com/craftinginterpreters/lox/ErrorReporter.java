@@ -0,0 +1,63 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Reports the errors found in a program, compiling or running it, and counts them.
+ *
+ * <p>Each compilation and each {@link LoxContext} has its own, so programs compiled or run at the
+ * same time never mix up their errors.
+ */
+final class ErrorReporter {
+  private final Consumer<String> sink;
+  private int errorCount = 0;
+  private boolean hadRuntimeError = false;
+
+  /** Makes a reporter that passes the message of each error, without a newline, to {@code sink}. */
+  ErrorReporter(Consumer<String> sink) {
+    this.sink = requireNonNull(sink);
+  }
+
+  /** How many syntax and resolution errors have been reported. */
+  int errorCount() {
+    return errorCount;
+  }
+
+  boolean hadError() {
+    return errorCount > 0;
+  }
+
+  boolean hadRuntimeError() {
+    return hadRuntimeError;
+  }
+
+  /** Forgets the errors reported so far, before running something else. */
+  void reset() {
+    errorCount = 0;
+    hadRuntimeError = false;
+  }
+
+  void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type() == TokenType.EOF) {
+      report(token.line(), " at end", message);
+    } else {
+      report(token.line(), " at '" + token.lexeme() + "'", message);
+    }
+  }
+
+  private void report(int line, String where, String message) {
+    sink.accept("[line " + line + "] Error" + where + ": " + message);
+    errorCount++;
+  }
+
+  void runtimeError(RuntimeError error) {
+    sink.accept(error.getMessage() + "\n[line " + error.line + "]");
+    hadRuntimeError = true;
+  }
+}
@@ -0,0 +1,105 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Remembers where one {@link Expr.Get} found its property on the instances it has read it from, so
+ * the next read from an instance of the same {@link Shape} skips the lookup.
+ *
+ * <p>Classes made by the same declarations share their shapes, in every run of a program, as
+ * described in {@link RootShapes}. So a shape alone is enough to tell where the property is: at a
+ * field index, or in a method on the class that is some number of superclasses up from the
+ * instance's. Entries hold that number rather than the method, since each run has methods of its
+ * own. A cache starts out empty, remembers the first shape it sees (which is all most sites ever
+ * see), and then up to {@link #MAX_SHAPES} shapes. A site that sees more shapes than that is
+ * megamorphic: the cache stops growing and reads from unremembered shapes go through {@link
+ * LoxInstance#get} every time.
+ */
+final class InlineCache {
+  private static final int MAX_SHAPES = 4;
+
+  /**
+   * What the property is on instances of one shape: the index of its field, or -1 if it's a
+   * method, in which case how many superclasses up from the instance's class the method is.
+   */
+  private record Entry(Shape shape, int fieldIndex, int methodDepth) {}
+
+  private static final Entry[] EMPTY = new Entry[0];
+
+  /**
+   * The remembered entries. Every run of a program shares its caches, possibly on several threads,
+   * so rather than being changed, the array is replaced with a longer copy when an entry is added.
+   * If two threads add one at once, one of the entries is lost, and simply added again later.
+   */
+  private volatile Entry[] entries = EMPTY;
+
+  Object get(LoxInstance instance, Token name) {
+    Entry entry = entryFor(instance, name);
+    if (entry == null) {
+      return instance.get(name);
+    }
+
+    if (entry.fieldIndex != -1) {
+      return instance.field(entry.fieldIndex);
+    }
+    return instance.klass().methodAt(entry.methodDepth, name.symbol()).bind(instance.original());
+  }
+
+  /**
+   * Returns the method that the property is on {@code instance}, unbound, or {@code null} if the
+   * property is a field.
+   */
+  @Nullable LoxFunction method(LoxInstance instance, Token name) {
+    Entry entry = entryFor(instance, name);
+    if (entry == null) {
+      if (instance.shape().indexOf(name.symbol()) != -1) {
+        return null;
+      }
+      return instance.klass().methodAt(methodDepth(instance, name), name.symbol());
+    }
+    if (entry.fieldIndex != -1) {
+      return null;
+    }
+    return instance.klass().methodAt(entry.methodDepth, name.symbol());
+  }
+
+  /**
+   * Returns the remembered entry for {@code instance}'s shape, remembering a new one if there's
+   * room, or null if the site is megamorphic.
+   */
+  private @Nullable Entry entryFor(LoxInstance instance, Token name) {
+    Shape shape = instance.shape();
+    Entry[] entries = this.entries;
+    for (Entry entry : entries) {
+      if (entry.shape == shape) {
+        return entry;
+      }
+    }
+
+    if (entries.length == MAX_SHAPES) {
+      return null;
+    }
+
+    // Only remember properties that exist, so that a miss still reports the error.
+    int fieldIndex = shape.indexOf(name.symbol());
+    int methodDepth = fieldIndex == -1 ? methodDepth(instance, name) : -1;
+    var entry = new Entry(shape, fieldIndex, methodDepth);
+    Entry[] grown = Arrays.copyOf(entries, entries.length + 1);
+    grown[entries.length] = entry;
+    this.entries = grown;
+    return entry;
+  }
+
+  /** Returns how many superclasses up from {@code instance}'s class the method {@code name} is. */
+  private static int methodDepth(LoxInstance instance, Token name) {
+    int depth = 0;
+    for (LoxClass klass = instance.klass(); klass != null; klass = klass.superclass) {
+      if (klass.methods().get(name.symbol()) != null) {
+        return depth;
+      }
+      depth++;
+    }
+    throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+  }
+}
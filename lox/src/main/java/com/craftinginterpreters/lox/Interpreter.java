@@ -2,8 +2,8 @@ package com.craftinginterpreters.lox;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -11,31 +11,111 @@ import org.jspecify.annotations.Nullable;
 
 // TODO: Consider translating to use record patterns once Java 18 is out:
 //       https://nipafx.dev/java-visitor-pattern-pointless/
-final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
+final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
-  final Environment globals = new Environment();
-  private Environment environment = globals;
-  private final Map<Expr, Integer> locals = new HashMap<>();
+  /** The depth and slot the Resolver leaves on global variables, which don't live in a frame. */
+  private static final int GLOBAL = -1;
 
-  Interpreter() {
-    globals.define(
-        "clock",
-        new LoxCallable() {
-          @Override
-          public int arity() {
-            return 0;
-          }
+  /** The upvalue, or first captured slot, that the Resolver leaves where nothing is captured. */
+  private static final int NOT_CAPTURED = -1;
 
-          @Override
-          public Object call(Interpreter interpreter, List<Object> arguments) {
-            return (double) System.currentTimeMillis() / 1_000.0;
-          }
+  final Environment globals;
 
-          @Override
-          public String toString() {
-            return "<native fn>";
-          }
-        });
+  /** Where "print" statements print to. */
+  final PrintStream out;
+
+  /** Where runtime errors, and errors in function bodies parsed on their first call, go. */
+  final ErrorReporter errors;
+
+  /** Whether to compile hot functions with the {@link JitCompiler}. */
+  final boolean jit;
+
+  /** How many steps the running program may take, and how long it may run for. */
+  final Budget budget = new Budget();
+
+  /** The slots of the local variables of this call, and of every call waiting on it. */
+  final ValueStack stack = new ValueStack();
+
+  /** Where the running function's frame starts on the {@link #stack}, or 0 in top-level code. */
+  private int frame = 0;
+
+  /** Where the next call's frame starts: just past the slots that the running code can use. */
+  private int top = 0;
+
+  /** The line of the call that started last, where its step and any stack overflow are reported. */
+  private int callLine = 0;
+
+  /** The value being returned by a statement that completed with {@link Completion#RETURN}. */
+  private @Nullable Object returnValue;
+
+  /**
+   * The function whose body is running, whose upvalues hold the variables it captured, and which
+   * loops count their iterations against.
+   */
+  @Nullable LoxFunction currentFunction;
+
+  // An interpreter never writes to a frozen instance or upvalue, which other interpreters forked
+  // from the same WarmState share. The first time it would, it makes a copy of its own, which it
+  // reads and writes in place of the original from then on.
+  private final Map<LoxInstance, LoxInstance> instanceCopies = new IdentityHashMap<>();
+  private final Map<Upvalue, Upvalue> upvalueCopies = new IdentityHashMap<>();
+
+  Interpreter(PrintStream out, ErrorReporter errors, boolean jit) {
+    this.globals = new Environment();
+    this.out = requireNonNull(out);
+    this.errors = requireNonNull(errors);
+    this.jit = jit;
+    for (Builtin builtin : Builtin.values()) {
+      globals.define(SymbolTable.intern(builtin.loxName), builtin);
+    }
+  }
+
+  /** Makes an interpreter that starts out with the globals captured in {@code state}. */
+  Interpreter(WarmState state, PrintStream out, ErrorReporter errors, boolean jit) {
+    this.globals = state.globals.fork();
+    this.out = requireNonNull(out);
+    this.errors = requireNonNull(errors);
+    this.jit = jit;
+  }
+
+  /**
+   * Captures this interpreter's globals as they are now, for other interpreters to start from.
+   * Every instance and captured variable that the globals reach is frozen, so from then on this
+   * interpreter, like those forked from the state, copies one before writing to it. Must not be
+   * called while code is running.
+   */
+  WarmState capture() {
+    if (!instanceCopies.isEmpty() || !upvalueCopies.isEmpty()) {
+      // The copies would be left behind, and forks would see the frozen originals instead.
+      throw new IllegalStateException("Can't capture after writing to frozen state");
+    }
+    return new WarmState(globals.fork());
+  }
+
+  /** Returns the instance to read {@code instance}'s fields from. */
+  LoxInstance forReading(LoxInstance instance) {
+    if (!instance.frozen) {
+      return instance;
+    }
+    LoxInstance copy = instanceCopies.get(instance);
+    return copy != null ? copy : instance;
+  }
+
+  /** Returns the instance to write {@code instance}'s fields to. */
+  LoxInstance forWriting(LoxInstance instance) {
+    return instance.frozen ? instanceCopies.computeIfAbsent(instance, LoxInstance::copy) : instance;
+  }
+
+  Upvalue forReading(Upvalue upvalue) {
+    if (!upvalue.frozen) {
+      return upvalue;
+    }
+    Upvalue copy = upvalueCopies.get(upvalue);
+    return copy != null ? copy : upvalue;
+  }
+
+  Upvalue forWriting(Upvalue upvalue) {
+    return upvalue.frozen ? upvalueCopies.computeIfAbsent(upvalue, Upvalue::copy) : upvalue;
   }
 
   void interpret(List<Stmt> statements) {
@@ -44,19 +124,28 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         execute(statement);
       }
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      errors.runtimeError(error);
+    } catch (StackOverflowError error) {
+      // The call that started last is the one that ran out of stack, as the VM reports it. Every
+      // call's finally block has put the frames back on the way out.
+      errors.runtimeError(new RuntimeError(callLine, "Stack overflow."));
+    } catch (LazyBody.BodyError error) {
+      // The errors in the body have already been reported, like any other syntax error.
     }
   }
 
-  private void execute(Stmt stmt) {
-    stmt.accept(this);
+  private Completion execute(Stmt stmt) {
+    return stmt.accept(this);
   }
 
-  void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
+  /** Returns the value that the function being executed returned, and forgets it. */
+  @Nullable Object takeReturnValue() {
+    Object value = returnValue;
+    returnValue = null;
+    return value;
   }
 
-  private String stringify(Object object) {
+  static String stringify(Object object) {
     if (object == null) {
       return "nil";
     }
@@ -76,9 +165,10 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
   public Object visitAssignExpr(Expr.Assign expr) {
     Object value = evaluate(expr.value);
 
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+    if (expr.upvalue != NOT_CAPTURED) {
+      forWriting(upvalue(expr.upvalue)).set(value);
+    } else if (expr.depth != GLOBAL) {
+      stack.set(frame + expr.slot, value);
     } else {
       globals.assign(expr.name, value);
     }
@@ -88,80 +178,154 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
   @Override
   public Object visitBinaryExpr(Expr.Binary expr) {
-    Object left = evaluate(expr.left);
-    Object right = evaluate(expr.right);
+    return expr.node.execute(this, expr);
+  }
 
-    switch (expr.operator.type()) {
-      case GREATER:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left > (double) right;
-      case GREATER_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left >= (double) right;
-      case LESS:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left < (double) right;
-      case LESS_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left <= (double) right;
-      case BANG_EQUAL:
-        return !isEqual(left, right);
-      case EQUAL_EQUAL:
-        return isEqual(left, right);
-      case MINUS:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left - (double) right;
-      case PLUS:
-        {
-          if (left instanceof Double && right instanceof Double) {
-            return (Double) left + (Double) right;
-          }
+  @Override
+  public Object visitCallExpr(Expr.Call expr) {
+    if (expr.callee instanceof Expr.Get get) {
+      return invoke(expr, get);
+    }
 
-          if (left instanceof String && right instanceof String) {
-            return left + (String) right;
-          }
+    Object callee = evaluate(expr.callee);
+    return call(expr, callee);
+  }
 
-          throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+  private Object call(Expr.Call expr, Object callee) {
+    List<Expr> arguments = expr.arguments;
+    switch (arguments.size()) {
+      case 0:
+        return checkCallable(expr, callee, 0).call0(this);
+      case 1:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          return checkCallable(expr, callee, 1).call1(this, a0);
+        }
+      case 2:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          return checkCallable(expr, callee, 2).call2(this, a0, a1);
+        }
+      case 3:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          Object a2 = evaluate(arguments.get(2));
+          return checkCallable(expr, callee, 3).call3(this, a0, a1, a2);
+        }
+      case 4:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          Object a2 = evaluate(arguments.get(2));
+          Object a3 = evaluate(arguments.get(3));
+          return checkCallable(expr, callee, 4).call4(this, a0, a1, a2, a3);
+        }
+      default:
+        {
+          Object[] values = evaluateArguments(expr);
+          return checkCallable(expr, callee, values.length).call(this, values);
         }
-      case SLASH:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left / (double) right;
-      case STAR:
-        checkNumberOperands(expr.operator, left, right);
-        return (double) left * (double) right;
     }
-
-    // Unreachable.
-    return null;
   }
 
-  @Override
-  public Object visitCallExpr(Expr.Call expr) {
-    Object callee = evaluate(expr.callee);
+  /**
+   * Calls a method straight on the instance it's looked up on, without creating the bound method
+   * that evaluating {@code get} on its own would.
+   */
+  private Object invoke(Expr.Call expr, Expr.Get get) {
+    Object object = evaluate(get.object);
+    if (!(object instanceof LoxInstance instance)) {
+      throw new RuntimeError(get.name, "Only instances have properties.");
+    }
 
-    List<Object> arguments = new ArrayList<>();
-    for (Expr argument : expr.arguments) {
-      arguments.add(evaluate(argument));
+    LoxInstance fields = forReading(instance);
+    LoxFunction method = get.cache.method(fields, get.name);
+    if (method == null) {
+      return call(expr, get.cache.get(fields, get.name));
     }
 
+    List<Expr> arguments = expr.arguments;
+    switch (arguments.size()) {
+      case 0:
+        checkArity(expr, method, 0);
+        return method.invoke0(this, instance);
+      case 1:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          checkArity(expr, method, 1);
+          return method.invoke1(this, instance, a0);
+        }
+      case 2:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          checkArity(expr, method, 2);
+          return method.invoke2(this, instance, a0, a1);
+        }
+      case 3:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          Object a2 = evaluate(arguments.get(2));
+          checkArity(expr, method, 3);
+          return method.invoke3(this, instance, a0, a1, a2);
+        }
+      case 4:
+        {
+          Object a0 = evaluate(arguments.get(0));
+          Object a1 = evaluate(arguments.get(1));
+          Object a2 = evaluate(arguments.get(2));
+          Object a3 = evaluate(arguments.get(3));
+          checkArity(expr, method, 4);
+          return method.invoke4(this, instance, a0, a1, a2, a3);
+        }
+      default:
+        {
+          Object[] values = evaluateArguments(expr);
+          checkArity(expr, method, values.length);
+          return method.invoke(this, instance, values);
+        }
+    }
+  }
+
+  private Object[] evaluateArguments(Expr.Call expr) {
+    var values = new Object[expr.arguments.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = evaluate(expr.arguments.get(i));
+    }
+    return values;
+  }
+
+  /** Checks that {@code callee} can be called with {@code argumentCount} arguments. */
+  LoxCallable checkCallable(Expr.Call expr, Object callee, int argumentCount) {
     if (!(callee instanceof LoxCallable function)) {
       throw new RuntimeError(expr.paren, "Can only call functions and classes.");
     }
 
-    if (arguments.size() != function.arity()) {
+    checkArity(expr, function, argumentCount);
+    return function;
+  }
+
+  /**
+   * Checks that {@code function} can be called with {@code argumentCount} arguments, just before
+   * {@code expr} calls it.
+   */
+  void checkArity(Expr.Call expr, LoxCallable function, int argumentCount) {
+    callLine = expr.paren.line();
+    if (argumentCount != function.arity()) {
       throw new RuntimeError(
           expr.paren,
-          "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+          "Expected " + function.arity() + " arguments but got " + argumentCount + ".");
     }
-
-    return function.call(this, arguments);
   }
 
   @Override
   public Object visitGetExpr(Expr.Get expr) {
     Object object = evaluate(expr.object);
     if (object instanceof LoxInstance instance) {
-      return instance.get(expr.name);
+      return expr.cache.get(forReading(instance), expr.name);
     }
 
     throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -205,18 +369,22 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     }
 
     Object value = evaluate(expr.value);
-    instance.set(expr.name, value);
+    forWriting(instance).set(expr.name, value);
     return value;
   }
 
   @Override
   public Object visitSuperExpr(Expr.Super expr) {
-    int distance = locals.get(expr);
-    LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
+    // "super" is declared around a class's methods, so a method always captures it.
+    LoxClass superclass = (LoxClass) forReading(upvalue(expr.upvalue)).get();
 
-    LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+    LoxInstance object =
+        (LoxInstance)
+            (expr.thisUpvalue != NOT_CAPTURED
+                ? forReading(upvalue(expr.thisUpvalue)).get()
+                : stack.get(frame));
 
-    Optional<LoxFunction> method = superclass.findMethod(expr.method.lexeme());
+    Optional<LoxFunction> method = superclass.findMethod(expr.method.symbol());
     return method
         .map(m -> m.bind(object))
         .orElseThrow(
@@ -227,7 +395,7 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
   @Override
   public Object visitThisExpr(Expr.This expr) {
-    return lookUpVariable(expr.keyword, expr);
+    return lookUpVariable(expr.keyword, expr.depth, expr.slot, expr.upvalue);
   }
 
   @Override
@@ -248,18 +416,42 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
   @Override
   public Object visitVariableExpr(Expr.Variable expr) {
-    return lookUpVariable(expr.name, expr);
+    return lookUpVariable(expr.name, expr.depth, expr.slot, expr.upvalue);
   }
 
-  private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      return environment.getAt(distance, name.lexeme());
+  private Object lookUpVariable(Token name, int depth, int slot, int upvalue) {
+    if (upvalue != NOT_CAPTURED) {
+      return forReading(upvalue(upvalue)).get();
+    } else if (depth != GLOBAL) {
+      return stack.get(frame + slot);
     } else {
       return globals.get(name);
     }
   }
 
+  private Upvalue upvalue(int index) {
+    // Only code inside a function can capture variables.
+    return requireNonNull(currentFunction).upvalues[index];
+  }
+
+  /** Captures the variables used by a closure of {@code function} created in the current scope. */
+  private Upvalue[] capture(Stmt.Function function) {
+    List<Capture> captures = function.captures;
+    if (captures.isEmpty()) {
+      return Upvalue.NONE;
+    }
+
+    var upvalues = new Upvalue[captures.size()];
+    for (int i = 0; i < upvalues.length; i++) {
+      Capture capture = captures.get(i);
+      upvalues[i] =
+          capture.isLocal()
+              ? stack.capture(frame + capture.index())
+              : upvalue(capture.index());
+    }
+    return upvalues;
+  }
+
   private void checkNumberOperand(Token operator, Object operand) {
     if (operand instanceof Double) {
       return;
@@ -267,14 +459,14 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     throw new RuntimeError(operator, "Operand must be a number.");
   }
 
-  private void checkNumberOperands(Token operator, Object left, Object right) {
+  static void checkNumberOperands(Token operator, Object left, Object right) {
     if (left instanceof Double && right instanceof Double) {
       return;
     }
     throw new RuntimeError(operator, "Operands must be numbers.");
   }
 
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if (object == null) {
       return false;
     }
@@ -284,28 +476,125 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     return true;
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if (a == null && b == null) {
       return true;
     }
     if (a == null) {
       return false;
     }
+    if (a instanceof Rope || b instanceof Rope) {
+      // The same string can be a String or a Rope, depending on how it was made.
+      return Rope.isString(a) && Rope.isString(b) && a.toString().equals(b.toString());
+    }
     return a.equals(b);
   }
 
-  private Object evaluate(Expr expr) {
+  Object evaluate(Expr expr) {
     return expr.accept(this);
   }
 
+  /**
+   * Evaluates {@code expr} for a caller that expects a number, without boxing the number if
+   * {@code expr} can produce it unboxed, and throwing {@link UnexpectedResult} with the value if it
+   * isn't a number.
+   */
+  double evaluateDouble(Expr expr) throws UnexpectedResult {
+    if (expr instanceof Expr.Binary binary) {
+      return binary.node.executeDouble(this, binary);
+    }
+    if (expr instanceof Expr.Grouping grouping) {
+      return evaluateDouble(grouping.expression);
+    }
+    if (expr instanceof Expr.Unary unary && unary.operator.type() == TokenType.MINUS) {
+      try {
+        return -evaluateDouble(unary.right);
+      } catch (UnexpectedResult e) {
+        throw new RuntimeError(unary.operator, "Operand must be a number.");
+      }
+    }
+    if (expr instanceof Expr.Variable variable
+        && variable.upvalue == NOT_CAPTURED
+        && variable.depth != GLOBAL) {
+      return stack.getDouble(frame + variable.slot);
+    }
+    return expectDouble(evaluate(expr));
+  }
+
+  /**
+   * Whether {@link #evaluateDouble} is expected to produce {@code expr}'s value without ever boxing
+   * it, judging by what it has produced so far.
+   */
+  private static boolean producesDouble(Expr expr) {
+    return switch (expr) {
+      case Expr.Binary binary -> binary.node instanceof BinaryNode.Arithmetic;
+      case Expr.Grouping grouping -> producesDouble(grouping.expression);
+      case Expr.Unary unary ->
+          unary.operator.type() == TokenType.MINUS && producesDouble(unary.right);
+      default -> false;
+    };
+  }
+
+  /**
+   * Evaluates {@code expr} only for what it does, not its value, which lets an assignment of a
+   * number to a local variable store the number without boxing it.
+   */
+  private void evaluateForEffect(Expr expr) {
+    if (expr instanceof Expr.Assign assign
+        && assign.upvalue == NOT_CAPTURED
+        && assign.depth != GLOBAL) {
+      storeLocal(frame + assign.slot, assign.value);
+    } else {
+      evaluate(expr);
+    }
+  }
+
+  /** Evaluates {@code value} into {@code slot}, unboxed if it's a number that can be. */
+  private void storeLocal(int slot, Expr value) {
+    if (!producesDouble(value)) {
+      stack.set(slot, evaluate(value));
+      return;
+    }
+    try {
+      stack.setDouble(slot, evaluateDouble(value));
+    } catch (UnexpectedResult e) {
+      stack.set(slot, e.value);
+    }
+  }
+
+  static double expectDouble(Object value) throws UnexpectedResult {
+    if (value instanceof Double number) {
+      return number;
+    }
+    throw new UnexpectedResult(value);
+  }
+
   @Override
-  public Void visitBlockStmt(Stmt.Block stmt) {
-    executeBlock(stmt.statements, new Environment(environment));
-    return null;
+  public Completion visitBlockStmt(Stmt.Block stmt) {
+    if (!stmt.hasScope) {
+      return executeStatements(stmt.statements);
+    }
+
+    int enclosingTop = top;
+    // A function's frame already has room for its blocks, but top-level code has no frame.
+    reserve(frame + stmt.frameSize);
+    try {
+      return executeStatements(stmt.statements);
+    } finally {
+      if (stmt.firstCapturedSlot != NOT_CAPTURED) {
+        stack.closeUpvalues(frame + stmt.firstCapturedSlot);
+      }
+      top = enclosingTop;
+    }
+  }
+
+  @Override
+  public Completion visitBreakStmt(Stmt.Break stmt) {
+    return Completion.BREAK;
   }
 
   @Override
-  public Object visitClassStmt(Stmt.Class stmt) {
+  public Completion visitClassStmt(Stmt.Class stmt) {
     @Nullable Object superclass = null;
     if (stmt.superclass != null) {
       superclass = evaluate(stmt.superclass);
@@ -314,92 +603,182 @@ final class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
       }
     }
 
-    environment.define(stmt.name.lexeme(), null);
+    define(stmt.name, stmt.slot, null);
 
+    int enclosingTop = top;
+    int superSlot = frame + stmt.superSlot;
     if (superclass != null) {
-      environment = new Environment(environment);
-      environment.define("super", superclass);
+      reserve(superSlot + 1);
+      stack.set(superSlot, superclass);
     }
 
-    var methods = new HashMap<String, LoxFunction>();
+    var methods = new SymbolMap<LoxFunction>();
     for (Stmt.Function method : stmt.methods) {
-      var function = new LoxFunction(method, environment, method.name.lexeme().equals("init"));
-      methods.put(method.name.lexeme(), function);
+      var function =
+          new LoxFunction(method, capture(method), method.name.symbol() == SymbolTable.INIT);
+      methods.put(method.name.symbol(), function);
     }
 
-    LoxClass klass = new LoxClass(stmt.name.lexeme(), (LoxClass) superclass, methods);
+    LoxClass klass =
+        new LoxClass(
+            stmt.name.lexeme(),
+            (LoxClass) superclass,
+            methods,
+            stmt.rootShapes.rootShape((LoxClass) superclass));
 
     if (superclass != null) {
-      environment = requireNonNull(environment.enclosing);
+      stack.closeUpvalues(superSlot);
+      stack.set(superSlot, null);
+      top = enclosingTop;
     }
 
-    environment.assign(stmt.name, klass);
-    return null;
+    define(stmt.name, stmt.slot, klass);
+    return Completion.NORMAL;
   }
 
-  void executeBlock(List<Stmt> statements, Environment environment) {
-    Environment previous = this.environment;
-    try {
-      this.environment = environment;
+  /** Defines a variable in {@code slot} of the running frame, or as a global. */
+  private void define(Token name, int slot, Object value) {
+    if (slot == GLOBAL) {
+      globals.define(name.symbol(), value);
+    } else {
+      stack.set(frame + slot, value);
+    }
+  }
 
-      for (var statement : statements) {
-        execute(statement);
+  /** Makes sure the running code can use the slots below {@code end} on the stack. */
+  private void reserve(int end) {
+    if (end > top) {
+      top = end;
+      stack.ensureCapacity(end);
+    }
+  }
+
+  /**
+   * Returns where the frame of a call that's about to start begins, after making room for its
+   * {@code size} slots. The caller fills in the receiver and arguments, and then runs the function
+   * with {@link #executeFunction}.
+   */
+  int newFrame(int size) {
+    stack.ensureCapacity(top + size);
+    return top;
+  }
+
+  /** Takes the step of the call that started last, at its call site, as the VM does. */
+  void stepCall() {
+    budget.step(callLine);
+  }
+
+  /** Runs the body of {@code function}, declared by {@code declaration}, in a new frame. */
+  Completion executeFunction(LoxFunction function, Stmt.Function declaration, int frame) {
+    stepCall();
+    int callerFrame = this.frame;
+    int callerTop = top;
+    LoxFunction caller = currentFunction;
+    this.frame = frame;
+    top = frame + declaration.frameSize;
+    currentFunction = function;
+    try {
+      // The same as executeStatements, but without an extra Java frame on deeply recursive calls.
+      for (var statement : declaration.body) {
+        Completion completion = execute(statement);
+        if (completion != Completion.NORMAL) {
+          return completion;
+        }
       }
+      return Completion.NORMAL;
     } finally {
-      this.environment = previous;
+      if (declaration.firstCapturedSlot != NOT_CAPTURED) {
+        stack.closeUpvalues(frame + declaration.firstCapturedSlot);
+      }
+      stack.clear(frame, top);
+      this.frame = callerFrame;
+      top = callerTop;
+      currentFunction = caller;
     }
   }
 
+  private Completion executeStatements(List<Stmt> statements) {
+    for (var statement : statements) {
+      Completion completion = execute(statement);
+      if (completion != Completion.NORMAL) {
+        return completion;
+      }
+    }
+    return Completion.NORMAL;
+  }
+
   @Override
-  public Void visitExpressionStmt(Stmt.Expression stmt) {
-    evaluate(stmt.expression);
-    return null;
+  public Completion visitContinueStmt(Stmt.Continue stmt) {
+    return Completion.CONTINUE;
   }
 
   @Override
-  public Object visitFunctionStmt(Stmt.Function stmt) {
-    var function = new LoxFunction(stmt, environment, /* initializer= */ false);
-    environment.define(stmt.name.lexeme(), function);
-    return null;
+  public Completion visitExpressionStmt(Stmt.Expression stmt) {
+    evaluateForEffect(stmt.expression);
+    return Completion.NORMAL;
+  }
+
+  @Override
+  public Completion visitFunctionStmt(Stmt.Function stmt) {
+    var function = new LoxFunction(stmt, capture(stmt), /* initializer= */ false);
+    define(stmt.name, stmt.slot, function);
+    return Completion.NORMAL;
   }
 
   @Override
-  public Object visitIfStmt(Stmt.If stmt) {
+  public Completion visitIfStmt(Stmt.If stmt) {
     if (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.thenBranch);
+      return execute(stmt.thenBranch);
     } else if (stmt.elseBranch != null) {
-      execute(stmt.elseBranch);
+      return execute(stmt.elseBranch);
     }
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitPrintStmt(Stmt.Print stmt) {
+  public Completion visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
-    return null;
+    out.println(stringify(value));
+    return Completion.NORMAL;
   }
 
   @Override
-  public Object visitReturnStmt(Stmt.Return stmt) {
-    Object value = (stmt.value != null) ? evaluate(stmt.value) : null;
+  public Completion visitReturnStmt(Stmt.Return stmt) {
+    returnValue = (stmt.value != null) ? evaluate(stmt.value) : null;
 
-    throw new Return(value);
+    return Completion.RETURN;
   }
 
   @Override
-  public Void visitVarStmt(Stmt.Var stmt) {
+  public Completion visitVarStmt(Stmt.Var stmt) {
+    if (stmt.slot != GLOBAL && stmt.initializer != null) {
+      storeLocal(frame + stmt.slot, stmt.initializer);
+      return Completion.NORMAL;
+    }
     Object value = (stmt.initializer != null) ? evaluate(stmt.initializer) : null;
 
-    environment.define(stmt.name.lexeme(), value);
-    return null;
+    define(stmt.name, stmt.slot, value);
+    return Completion.NORMAL;
   }
 
   @Override
-  public Object visitWhileStmt(Stmt.While stmt) {
+  public Completion visitWhileStmt(Stmt.While stmt) {
     while (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.body);
+      Completion completion = execute(stmt.body);
+      if (completion == Completion.BREAK) {
+        break;
+      }
+      if (completion == Completion.RETURN) {
+        return completion;
+      }
+      if (stmt.increment != null) {
+        evaluateForEffect(stmt.increment);
+      }
+      budget.step(stmt.keyword.line());
+      if (currentFunction != null) {
+        currentFunction.backEdges++;
+      }
     }
-    return null;
+    return Completion.NORMAL;
   }
 }
@@ -0,0 +1,703 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.AASTORE;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.DUP_X1;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.GOTO;
+import static org.objectweb.asm.Opcodes.ICONST_1;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.IFNE;
+import static org.objectweb.asm.Opcodes.IFNONNULL;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.IXOR;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.SWAP;
+import static org.objectweb.asm.Opcodes.V21;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * Compiles the bodies of hot Lox functions to JVM bytecode, so that the JVM's own JIT compilers
+ * see the function's code rather than the Interpreter's visitor dispatch.
+ *
+ * <p>A {@link LoxFunction} counts how many times it's called, and how many loop iterations it runs,
+ * while it's interpreted. Once that reaches {@link #THRESHOLD}, the next call compiles its {@link
+ * Stmt.Function} into a hidden class implementing {@link CompiledFunction}, and that and every
+ * later call of the function runs the compiled code instead. There's no on-stack replacement: a
+ * call that is already running in the Interpreter finishes there.
+ *
+ * <p>The function's parameters and local variables live in JVM locals. Globals and captured
+ * variables are read from the same environments and upvalues the Interpreter uses, and everything
+ * else goes through {@link JitRuntime}. Functions that declare functions or classes of their own,
+ * or use "super", aren't compiled at all and keep running in the Interpreter.
+ */
+final class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  /** How many calls and loop iterations a function runs in the Interpreter before it's compiled. */
+  static final int THRESHOLD = 1_000;
+
+  private static final String CLASS_NAME = "com/craftinginterpreters/lox/JitCompiledFunction";
+  private static final String OBJECT = Type.getInternalName(Object.class);
+  private static final String BOOLEAN = Type.getInternalName(Boolean.class);
+  private static final String RUNTIME = Type.getInternalName(JitRuntime.class);
+  private static final String INTERPRETER = Type.getInternalName(Interpreter.class);
+  private static final int MAX_FIXED_ARITY = 4;
+
+  // The JVM locals that every compiled entry point starts with.
+  private static final int THIS_LOCAL = 0;
+  private static final int INTERPRETER_LOCAL = 1;
+  private static final int UPVALUES_LOCAL = 2;
+  private static final int RECEIVER_LOCAL = 3;
+  private static final int FIRST_ARGUMENT_LOCAL = 4;
+
+  /** The descriptors of JitRuntime's methods, which all have different names. */
+  private static final Map<String, String> RUNTIME_DESCRIPTORS = new HashMap<>();
+
+  static {
+    for (Method method : JitRuntime.class.getDeclaredMethods()) {
+      RUNTIME_DESCRIPTORS.put(method.getName(), Type.getMethodDescriptor(method));
+    }
+  }
+
+  /** Thrown when the function uses something this compiler doesn't handle. */
+  private static final class Unsupported extends RuntimeException {
+    Unsupported() {
+      // Disable some overhead like stack traces, which we don't need to give up on compiling.
+      super(null, null, false, false);
+    }
+  }
+
+  /** A loop being compiled, and where "break" and "continue" in its body jump to. */
+  private record Loop(@Nullable Loop enclosing, Label breakLabel, Label continueLabel) {}
+
+  private final ClassWriter classWriter =
+      new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+          // Every value the compiled code merges is handled as an Object.
+          return OBJECT;
+        }
+      };
+
+  private final boolean initializer;
+  private final List<Object> constants = new ArrayList<>();
+  private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+  /** The JVM local that holds each slot of the function's frame, as the Resolver numbered them. */
+  private int[] slotLocals = new int[0];
+
+  private @Nullable MethodVisitor code;
+  private int nextLocal;
+  private @Nullable Loop loop = null;
+
+  private JitCompiler(boolean initializer) {
+    this.initializer = initializer;
+  }
+
+  /**
+   * Compiles {@code function}, or returns null if it uses something this compiler doesn't handle or
+   * is too big for a JVM class.
+   */
+  static @Nullable CompiledFunction compile(
+      Stmt.Function function, boolean isMethod, boolean initializer) {
+    var compiler = new JitCompiler(initializer);
+    byte[] classFile;
+    try {
+      compiler.compileFunction(function, isMethod);
+      classFile = compiler.classWriter.toByteArray();
+    } catch (Unsupported e) {
+      return null;
+    } catch (MethodTooLargeException | ClassTooLargeException e) {
+      // The JVM limits a method to 64 KB of code, and a class to 65,535 constants.
+      return null;
+    } catch (IllegalArgumentException e) {
+      // ASM can't write some constants into a class file, such as a string literal that takes more
+      // than 65,535 bytes.
+      return null;
+    }
+    return compiler.load(classFile);
+  }
+
+  private void compileFunction(Stmt.Function function, boolean isMethod) {
+    classWriter.visit(
+        V21,
+        ACC_FINAL | ACC_SUPER,
+        CLASS_NAME,
+        null,
+        OBJECT,
+        new String[] {Type.getInternalName(CompiledFunction.class)});
+
+    int arity = function.params.size();
+    var parameterTypes = new ArrayList<Type>();
+    parameterTypes.add(Type.getType(Interpreter.class));
+    parameterTypes.add(Type.getType(Upvalue[].class));
+    parameterTypes.add(Type.getType(LoxInstance.class));
+    String name;
+    if (arity <= MAX_FIXED_ARITY) {
+      name = "call" + arity;
+      for (int i = 0; i < arity; i++) {
+        parameterTypes.add(Type.getType(Object.class));
+      }
+    } else {
+      name = "call";
+      parameterTypes.add(Type.getType(Object[].class));
+    }
+    String descriptor =
+        Type.getMethodDescriptor(Type.getType(Object.class), parameterTypes.toArray(Type[]::new));
+    code = classWriter.visitMethod(ACC_PUBLIC, name, descriptor, null, null);
+    code.visitCode();
+    code.visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    invokeRuntime("stepCall");
+
+    slotLocals = new int[function.frameSize];
+    int slot = 0;
+    if (isMethod) {
+      slotLocals[slot++] = RECEIVER_LOCAL;
+    }
+    if (arity <= MAX_FIXED_ARITY) {
+      for (int i = 0; i < arity; i++) {
+        slotLocals[slot++] = FIRST_ARGUMENT_LOCAL + i;
+      }
+      nextLocal = FIRST_ARGUMENT_LOCAL + arity;
+    } else {
+      // Spread the arguments out of their array into a local each.
+      nextLocal = FIRST_ARGUMENT_LOCAL + 1;
+      for (int i = 0; i < arity; i++) {
+        code().visitVarInsn(ALOAD, FIRST_ARGUMENT_LOCAL);
+        pushInt(i);
+        code().visitInsn(AALOAD);
+        code().visitVarInsn(ASTORE, nextLocal);
+        slotLocals[slot++] = nextLocal++;
+      }
+    }
+
+    function.body.forEach(this::compile);
+    emitImplicitReturn();
+
+    code().visitMaxs(0, 0);
+    code().visitEnd();
+
+    defineConstructor();
+    classWriter.visitEnd();
+  }
+
+  /** Defines the constructor, which stores each constant the code refers to in its own field. */
+  private void defineConstructor() {
+    MethodVisitor constructor =
+        classWriter.visitMethod(
+            ACC_PUBLIC,
+            "<init>",
+            Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object[].class)),
+            null,
+            null);
+    constructor.visitCode();
+    constructor.visitVarInsn(ALOAD, 0);
+    constructor.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+    for (int i = 0; i < constants.size(); i++) {
+      Type type = Type.getType(constants.get(i).getClass());
+      classWriter
+          .visitField(ACC_PRIVATE | ACC_FINAL, constantField(i), type.getDescriptor(), null, null)
+          .visitEnd();
+      constructor.visitVarInsn(ALOAD, 0);
+      constructor.visitVarInsn(ALOAD, 1);
+      pushInt(constructor, i);
+      constructor.visitInsn(AALOAD);
+      constructor.visitTypeInsn(CHECKCAST, type.getInternalName());
+      constructor.visitFieldInsn(PUTFIELD, CLASS_NAME, constantField(i), type.getDescriptor());
+    }
+    constructor.visitInsn(RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+  }
+
+  private CompiledFunction load(byte[] classFile) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+      return (CompiledFunction)
+          lookup
+              .findConstructor(
+                  lookup.lookupClass(), MethodType.methodType(void.class, Object[].class))
+              .invoke(constants.toArray());
+    } catch (Throwable e) {
+      throw new AssertionError("Generated an invalid class", e);
+    }
+  }
+
+  private MethodVisitor code() {
+    // Only ever null before compileFunction starts the method.
+    return requireNonNull(code);
+  }
+
+  private void compile(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  private void compile(Expr expr) {
+    expr.accept(this);
+  }
+
+  /** Compiles {@code condition} to jump to {@code ifFalse} if it's falsey, or fall through. */
+  private void compileCondition(Expr condition, Label ifFalse) {
+    switch (condition) {
+      case Expr.Grouping grouping -> compileCondition(grouping.expression, ifFalse);
+      case Expr.Logical logical when logical.operator.type() == TokenType.AND -> {
+        compileCondition(logical.left, ifFalse);
+        compileCondition(logical.right, ifFalse);
+      }
+      case Expr.Logical logical -> {
+        Label tryRight = new Label();
+        Label isTrue = new Label();
+        compileCondition(logical.left, tryRight);
+        code().visitJumpInsn(GOTO, isTrue);
+        code().visitLabel(tryRight);
+        compileCondition(logical.right, ifFalse);
+        code().visitLabel(isTrue);
+      }
+      case Expr.Binary binary when comparison(binary.operator.type()) != null -> {
+        compileComparison(binary);
+        code().visitJumpInsn(IFEQ, ifFalse);
+      }
+      default -> {
+        compile(condition);
+        emitIsTruthy();
+        code().visitJumpInsn(IFEQ, ifFalse);
+      }
+    }
+  }
+
+  /** Returns the JitRuntime method for a comparison operator, or null if it isn't one. */
+  private static @Nullable String comparison(TokenType operator) {
+    return switch (operator) {
+      case GREATER -> "greater";
+      case GREATER_EQUAL -> "greaterEqual";
+      case LESS -> "less";
+      case LESS_EQUAL -> "lessEqual";
+      case EQUAL_EQUAL, BANG_EQUAL -> "";
+      default -> null;
+    };
+  }
+
+  /** Compiles a comparison to leave a primitive boolean on the stack. */
+  private void compileComparison(Expr.Binary expr) {
+    compile(expr.left);
+    compile(expr.right);
+    switch (expr.operator.type()) {
+      case EQUAL_EQUAL -> emitIsEqual();
+      case BANG_EQUAL -> {
+        emitIsEqual();
+        emitNot();
+      }
+      default -> {
+        loadConstant(expr.operator);
+        invokeRuntime(requireNonNull(comparison(expr.operator.type())));
+      }
+    }
+  }
+
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    compile(expr.value);
+    if (expr.upvalue != -1) {
+      code().visitVarInsn(ALOAD, UPVALUES_LOCAL);
+      pushInt(expr.upvalue);
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      invokeRuntime("assignUpvalue");
+    } else if (expr.depth == -1) {
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      loadConstant(expr.name);
+      invokeRuntime("assignGlobal");
+    } else {
+      code().visitInsn(DUP);
+      code().visitVarInsn(ASTORE, slotLocals[expr.slot]);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    if (comparison(expr.operator.type()) != null) {
+      compileComparison(expr);
+      emitBoxBoolean();
+      return null;
+    }
+
+    compile(expr.left);
+    compile(expr.right);
+    loadConstant(expr.operator);
+    switch (expr.operator.type()) {
+      case PLUS -> invokeRuntime("add");
+      case MINUS -> invokeRuntime("subtract");
+      case STAR -> invokeRuntime("multiply");
+      case SLASH -> invokeRuntime("divide");
+      default -> throw new AssertionError("Unhandled binary operator " + expr.operator.type());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    List<Expr> arguments = expr.arguments;
+    boolean fixedArity = arguments.size() <= MAX_FIXED_ARITY;
+
+    if (expr.callee instanceof Expr.Get get) {
+      // Leaves the object, the method or null, and the field or null on the stack. See JitRuntime.
+      compile(get.object);
+      code().visitInsn(DUP);
+      loadConstant(get);
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      invokeRuntime("method");
+      code().visitInsn(DUP);
+      Label isMethod = new Label();
+      Label lookedUp = new Label();
+      code().visitJumpInsn(IFNONNULL, isMethod);
+      code().visitInsn(SWAP);
+      code().visitInsn(DUP_X1);
+      loadConstant(get);
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      invokeRuntime("get");
+      code().visitJumpInsn(GOTO, lookedUp);
+      code().visitLabel(isMethod);
+      code().visitInsn(ACONST_NULL);
+      code().visitLabel(lookedUp);
+
+      compileArguments(arguments);
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      loadConstant(expr);
+      invokeRuntime(fixedArity ? "invoke" + arguments.size() : "invoke");
+      return null;
+    }
+
+    compile(expr.callee);
+    compileArguments(arguments);
+    code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    loadConstant(expr);
+    invokeRuntime(fixedArity ? "call" + arguments.size() : "call");
+    return null;
+  }
+
+  /** Leaves a few arguments on the stack one by one, or more than that in an array. */
+  private void compileArguments(List<Expr> arguments) {
+    if (arguments.size() <= MAX_FIXED_ARITY) {
+      arguments.forEach(this::compile);
+      return;
+    }
+
+    pushInt(arguments.size());
+    code().visitTypeInsn(ANEWARRAY, OBJECT);
+    for (int i = 0; i < arguments.size(); i++) {
+      code().visitInsn(DUP);
+      pushInt(i);
+      compile(arguments.get(i));
+      code().visitInsn(AASTORE);
+    }
+  }
+
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    compile(expr.object);
+    loadConstant(expr);
+    code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    invokeRuntime("get");
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    compile(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    switch (expr.value) {
+      case null -> code().visitInsn(ACONST_NULL);
+      case Boolean value ->
+          code()
+              .visitFieldInsn(
+                  GETSTATIC, BOOLEAN, value ? "TRUE" : "FALSE", Type.getDescriptor(Boolean.class));
+      case String value -> code().visitLdcInsn(value);
+      default -> loadConstant(expr.value);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitLogicalExpr(Expr.Logical expr) {
+    Label end = new Label();
+    compile(expr.left);
+    code().visitInsn(DUP);
+    emitIsTruthy();
+    code().visitJumpInsn(expr.operator.type() == TokenType.OR ? IFNE : IFEQ, end);
+    code().visitInsn(POP);
+    compile(expr.right);
+    code().visitLabel(end);
+    return null;
+  }
+
+  @Override
+  public Void visitSetExpr(Expr.Set expr) {
+    compile(expr.object);
+    loadConstant(expr);
+    invokeRuntime("checkInstance");
+    compile(expr.value);
+    code().visitInsn(DUP_X1);
+    loadConstant(expr);
+    code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    invokeRuntime("set");
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    loadVariable(expr.keyword, expr.depth, expr.slot, expr.upvalue);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    compile(expr.right);
+    if (expr.operator.type() == TokenType.MINUS) {
+      loadConstant(expr.operator);
+      invokeRuntime("negate");
+    } else {
+      emitIsTruthy();
+      emitNot();
+      emitBoxBoolean();
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    loadVariable(expr.name, expr.depth, expr.slot, expr.upvalue);
+    return null;
+  }
+
+  private void loadVariable(Token name, int depth, int slot, int upvalue) {
+    if (upvalue != -1) {
+      code().visitVarInsn(ALOAD, UPVALUES_LOCAL);
+      pushInt(upvalue);
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      invokeRuntime("getUpvalue");
+    } else if (depth == -1) {
+      code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+      loadConstant(name);
+      invokeRuntime("getGlobal");
+    } else {
+      code().visitVarInsn(ALOAD, slotLocals[slot]);
+    }
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    stmt.statements.forEach(this::compile);
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    code().visitJumpInsn(GOTO, requireNonNull(loop).breakLabel());
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    code().visitJumpInsn(GOTO, requireNonNull(loop).continueLabel());
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expression);
+    code().visitInsn(POP);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    throw new Unsupported();
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    Label elseBranch = new Label();
+    compileCondition(stmt.condition, elseBranch);
+    compile(stmt.thenBranch);
+    if (stmt.elseBranch == null) {
+      code().visitLabel(elseBranch);
+      return null;
+    }
+
+    Label end = new Label();
+    code().visitJumpInsn(GOTO, end);
+    code().visitLabel(elseBranch);
+    compile(stmt.elseBranch);
+    code().visitLabel(end);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expression);
+    code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    invokeRuntime("print");
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value == null) {
+      emitImplicitReturn();
+    } else {
+      compile(stmt.value);
+      code().visitInsn(ARETURN);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer != null) {
+      compile(stmt.initializer);
+    } else {
+      code().visitInsn(ACONST_NULL);
+    }
+    int local = nextLocal++;
+    code().visitVarInsn(ASTORE, local);
+    slotLocals[stmt.slot] = local;
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    Label start = new Label();
+    Label end = new Label();
+    Label increment = new Label();
+
+    code().visitLabel(start);
+    compileCondition(stmt.condition, end);
+    loop = new Loop(loop, end, increment);
+    compile(stmt.body);
+    loop = loop.enclosing();
+    code().visitLabel(increment);
+    if (stmt.increment != null) {
+      compile(stmt.increment);
+      code().visitInsn(POP);
+    }
+    emitStep(stmt.keyword);
+    code().visitJumpInsn(GOTO, start);
+    code().visitLabel(end);
+    return null;
+  }
+
+  /** Returns what a function returns without a value: "this" for an initializer, or nil. */
+  private void emitImplicitReturn() {
+    if (initializer) {
+      code().visitVarInsn(ALOAD, RECEIVER_LOCAL);
+    } else {
+      code().visitInsn(ACONST_NULL);
+    }
+    code().visitInsn(ARETURN);
+  }
+
+  /** Takes a step against the Interpreter's {@link Budget}, as it does for loops. */
+  private void emitStep(Token token) {
+    code().visitVarInsn(ALOAD, INTERPRETER_LOCAL);
+    pushInt(token.line());
+    invokeRuntime("step");
+  }
+
+  private void emitIsTruthy() {
+    code().visitMethodInsn(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z", false);
+  }
+
+  private void emitIsEqual() {
+    code()
+        .visitMethodInsn(
+            INVOKESTATIC, INTERPRETER, "isEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+  }
+
+  private void emitNot() {
+    code().visitInsn(ICONST_1);
+    code().visitInsn(IXOR);
+  }
+
+  private void emitBoxBoolean() {
+    code().visitMethodInsn(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;", false);
+  }
+
+  private void invokeRuntime(String name) {
+    String descriptor = RUNTIME_DESCRIPTORS.get(name);
+    if (descriptor == null) {
+      throw new AssertionError("No JitRuntime method called " + name);
+    }
+    code().visitMethodInsn(INVOKESTATIC, RUNTIME, name, descriptor, false);
+  }
+
+  /** Pushes a value that can't be written into the class file directly, from a field. */
+  private void loadConstant(Object value) {
+    int index =
+        constantIndexes.computeIfAbsent(
+            value,
+            v -> {
+              constants.add(v);
+              return constants.size() - 1;
+            });
+    code().visitVarInsn(ALOAD, THIS_LOCAL);
+    code()
+        .visitFieldInsn(
+            GETFIELD, CLASS_NAME, constantField(index), Type.getDescriptor(value.getClass()));
+  }
+
+  private static String constantField(int index) {
+    return "constant" + index;
+  }
+
+  private void pushInt(int value) {
+    pushInt(code(), value);
+  }
+
+  private static void pushInt(MethodVisitor code, int value) {
+    code.visitLdcInsn(value);
+  }
+}
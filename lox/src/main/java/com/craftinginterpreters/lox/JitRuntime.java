@@ -0,0 +1,251 @@
+package com.craftinginterpreters.lox;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The operations that code compiled by the {@link JitCompiler} calls for anything more than moving
+ * values between locals.
+ *
+ * <p>Each does what the {@link Interpreter} does for the same node, including reporting the same
+ * runtime errors against the same tokens, so compiling a function doesn't change how it behaves.
+ */
+final class JitRuntime {
+  private JitRuntime() {}
+
+  static Object add(Object left, Object right, Token operator) {
+    if (left instanceof Double l && right instanceof Double r) {
+      return l + r;
+    }
+    if (Rope.isString(left) && Rope.isString(right)) {
+      return Rope.concat(left, right);
+    }
+    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+  }
+
+  static Object subtract(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left - (double) right;
+  }
+
+  static Object multiply(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left * (double) right;
+  }
+
+  static Object divide(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left / (double) right;
+  }
+
+  static boolean greater(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left > (double) right;
+  }
+
+  static boolean greaterEqual(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left >= (double) right;
+  }
+
+  static boolean less(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left < (double) right;
+  }
+
+  static boolean lessEqual(Object left, Object right, Token operator) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double) left <= (double) right;
+  }
+
+  static Object negate(Object operand, Token operator) {
+    if (operand instanceof Double value) {
+      return -value;
+    }
+    throw new RuntimeError(operator, "Operand must be a number.");
+  }
+
+  static Object getGlobal(Interpreter interpreter, Token name) {
+    return interpreter.globals.get(name);
+  }
+
+  static Object assignGlobal(Object value, Interpreter interpreter, Token name) {
+    interpreter.globals.assign(name, value);
+    return value;
+  }
+
+  static Object getUpvalue(Upvalue[] upvalues, int index, Interpreter interpreter) {
+    return interpreter.forReading(upvalues[index]).get();
+  }
+
+  static Object assignUpvalue(
+      Object value, Upvalue[] upvalues, int index, Interpreter interpreter) {
+    interpreter.forWriting(upvalues[index]).set(value);
+    return value;
+  }
+
+  static Object get(Object object, Expr.Get get, Interpreter interpreter) {
+    if (object instanceof LoxInstance instance) {
+      return get.cache.get(interpreter.forReading(instance), get.name);
+    }
+    throw new RuntimeError(get.name, "Only instances have properties.");
+  }
+
+  static LoxInstance checkInstance(Object object, Expr.Set set) {
+    if (object instanceof LoxInstance instance) {
+      return instance;
+    }
+    throw new RuntimeError(set.name, "Only instances have fields.");
+  }
+
+  static void set(LoxInstance instance, Object value, Expr.Set set, Interpreter interpreter) {
+    interpreter.forWriting(instance).set(set.name, value);
+  }
+
+  static void step(Interpreter interpreter, int line) {
+    interpreter.budget.step(line);
+  }
+
+  static void stepCall(Interpreter interpreter) {
+    interpreter.stepCall();
+  }
+
+  static void print(Object value, Interpreter interpreter) {
+    interpreter.out.println(Interpreter.stringify(value));
+  }
+
+  static Object call0(Object callee, Interpreter interpreter, Expr.Call call) {
+    return interpreter.checkCallable(call, callee, 0).call0(interpreter);
+  }
+
+  static Object call1(Object callee, Object a0, Interpreter interpreter, Expr.Call call) {
+    return interpreter.checkCallable(call, callee, 1).call1(interpreter, a0);
+  }
+
+  static Object call2(
+      Object callee, Object a0, Object a1, Interpreter interpreter, Expr.Call call) {
+    return interpreter.checkCallable(call, callee, 2).call2(interpreter, a0, a1);
+  }
+
+  static Object call3(
+      Object callee, Object a0, Object a1, Object a2, Interpreter interpreter, Expr.Call call) {
+    return interpreter.checkCallable(call, callee, 3).call3(interpreter, a0, a1, a2);
+  }
+
+  static Object call4(
+      Object callee,
+      Object a0,
+      Object a1,
+      Object a2,
+      Object a3,
+      Interpreter interpreter,
+      Expr.Call call) {
+    return interpreter.checkCallable(call, callee, 4).call4(interpreter, a0, a1, a2, a3);
+  }
+
+  static Object call(Object callee, Object[] arguments, Interpreter interpreter, Expr.Call call) {
+    return interpreter.checkCallable(call, callee, arguments.length).call(interpreter, arguments);
+  }
+
+  // A call of a property, like "object.name(...)", is compiled as a lookup of the property
+  // followed by one of the invoke methods. If the property is a method, the lookup returns it
+  // unbound and the invoke method calls it on the object directly. Otherwise the lookup returns
+  // null, the compiled code reads the property as a field, and the invoke method calls the field's
+  // value instead.
+
+  /** Returns the method called {@code get.name} on {@code object}, or null if it is a field. */
+  static @Nullable LoxFunction method(Object object, Expr.Get get, Interpreter interpreter) {
+    if (object instanceof LoxInstance instance) {
+      return get.cache.method(interpreter.forReading(instance), get.name);
+    }
+    throw new RuntimeError(get.name, "Only instances have properties.");
+  }
+
+  static Object invoke0(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, 0);
+      return method.invoke0(interpreter, (LoxInstance) object);
+    }
+    return call0(field, interpreter, call);
+  }
+
+  static Object invoke1(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Object a0,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, 1);
+      return method.invoke1(interpreter, (LoxInstance) object, a0);
+    }
+    return call1(field, a0, interpreter, call);
+  }
+
+  static Object invoke2(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Object a0,
+      Object a1,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, 2);
+      return method.invoke2(interpreter, (LoxInstance) object, a0, a1);
+    }
+    return call2(field, a0, a1, interpreter, call);
+  }
+
+  static Object invoke3(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Object a0,
+      Object a1,
+      Object a2,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, 3);
+      return method.invoke3(interpreter, (LoxInstance) object, a0, a1, a2);
+    }
+    return call3(field, a0, a1, a2, interpreter, call);
+  }
+
+  static Object invoke4(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Object a0,
+      Object a1,
+      Object a2,
+      Object a3,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, 4);
+      return method.invoke4(interpreter, (LoxInstance) object, a0, a1, a2, a3);
+    }
+    return call4(field, a0, a1, a2, a3, interpreter, call);
+  }
+
+  static Object invoke(
+      Object object,
+      @Nullable LoxFunction method,
+      @Nullable Object field,
+      Object[] arguments,
+      Interpreter interpreter,
+      Expr.Call call) {
+    if (method != null) {
+      interpreter.checkArity(call, method, arguments.length);
+      return method.invoke(interpreter, (LoxInstance) object, arguments);
+    }
+    return call(field, arguments, interpreter, call);
+  }
+}
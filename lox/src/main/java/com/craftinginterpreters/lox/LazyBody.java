@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The body of a function that the {@link Parser} skipped over, to be parsed the first time the
+ * function is called.
+ *
+ * <p>Only functions declared at the top level are parsed lazily. Their bodies can't refer to any
+ * variable but globals, which are looked up by name, so a body can be parsed and resolved on its
+ * own without knowing anything else about the program.
+ *
+ * <p>A body is parsed at most once, however many threads run its program, and reports its errors
+ * to whichever run calls it first.
+ */
+final class LazyBody {
+
+  /** Thrown when a body turns out to have errors, once they have been reported. */
+  static final class BodyError extends RuntimeException {}
+
+  private final TokenBuffer tokens;
+
+  /** The index of the function's name, which its declaration starts from after "fun". */
+  private final int start;
+
+  /** The index just past the "}" that ends the function's body. */
+  private final int end;
+
+  /** Whether to optimize the body once it's parsed, as the rest of its program was. */
+  private final boolean optimize;
+
+  private Stmt.@Nullable Function parsed = null;
+
+  LazyBody(TokenBuffer tokens, int start, int end, boolean optimize) {
+    this.tokens = requireNonNull(tokens);
+    this.start = start;
+    this.end = end;
+    this.optimize = optimize;
+  }
+
+  /**
+   * Returns the function's whole declaration, parsing and resolving it the first time, and
+   * reporting any errors in it to {@code errors}.
+   */
+  synchronized Stmt.Function parse(ErrorReporter errors) {
+    if (parsed != null) {
+      return parsed;
+    }
+
+    int errorCount = errors.errorCount();
+    Stmt.Function function = Parser.parseFunction(tokens, errors, start, end);
+    if (function == null || errors.errorCount() != errorCount) {
+      throw new BodyError();
+    }
+
+    List<Stmt> program = List.of(function);
+    new Resolver(errors).resolve(program);
+    if (errors.errorCount() != errorCount) {
+      throw new BodyError();
+    }
+
+    if (optimize) {
+      program = new Optimizer().optimize(program);
+      new Resolver(errors).resolve(program);
+    }
+
+    parsed = (Stmt.Function) program.get(0);
+    return parsed;
+  }
+}
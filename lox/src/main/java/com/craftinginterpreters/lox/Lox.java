@@ -5,98 +5,154 @@ import static java.nio.charset.Charset.defaultCharset;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import org.jspecify.annotations.Nullable;
 
+/** The jlox command, which runs a script or a REPL through a {@link LoxEngine}. */
 public final class Lox {
 
-  private static final Interpreter interpreter = new Interpreter();
+  public static void main(String[] args) throws IOException {
+    LoxEngine.Builder builder = LoxEngine.builder();
+    boolean useVm = false;
+    boolean lazy = false;
+    @Nullable Path cacheDirectory = null;
+    @Nullable Path snapshotIn = null;
+    @Nullable Path snapshotOut = null;
+    boolean dumpAst = false;
+    @Nullable String script = null;
+    for (String arg : args) {
+      if (arg.equals("--engine=tree")) {
+        useVm = false;
+      } else if (arg.equals("--engine=vm")) {
+        useVm = true;
+      } else if (arg.equals("--no-optimize")) {
+        builder.optimize(false);
+      } else if (arg.equals("--no-jit")) {
+        builder.jit(false);
+      } else if (arg.equals("--lazy")) {
+        lazy = true;
+      } else if (arg.equals("--cache")) {
+        cacheDirectory = Path.of(System.getProperty("user.home"), ".cache", "jlox");
+      } else if (arg.startsWith("--cache=")) {
+        cacheDirectory = Path.of(arg.substring("--cache=".length()));
+      } else if (arg.startsWith("--snapshot-in=")) {
+        snapshotIn = Path.of(arg.substring("--snapshot-in=".length()));
+      } else if (arg.startsWith("--snapshot-out=")) {
+        snapshotOut = Path.of(arg.substring("--snapshot-out=".length()));
+      } else if (arg.equals("--dump-ast")) {
+        dumpAst = true;
+      } else if (arg.startsWith("--") || script != null) {
+        usage();
+      } else {
+        script = arg;
+      }
+    }
 
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
+    // Snapshots hold the Interpreter's globals, which the VirtualMachine doesn't share.
+    if (useVm && (snapshotIn != null || snapshotOut != null)) {
+      usage();
+    }
 
-  public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
-    } else {
-      runPrompt();
+    // Printing the AST needs every function's body parsed, and nothing compiled to bytecode.
+    builder.useVm(useVm && !dumpAst).lazy(lazy && !dumpAst);
+    // Only scripts are cached, not each line typed into the REPL.
+    if (cacheDirectory != null && script != null) {
+      builder.cacheDirectory(cacheDirectory);
     }
-  }
 
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Path.of(path));
-    run(new String(bytes, StandardCharsets.UTF_8));
+    LoxEngine engine = builder.build();
+    LoxContext context = engine.newContext(System.out, System.err);
+    if (snapshotIn != null) {
+      restoreSnapshot(context, snapshotIn);
+    }
 
-    // Indicate an error in an exit code.
-    if (hadError) {
-      System.exit(65);
+    if (script != null) {
+      runFile(engine, context, script, dumpAst);
+    } else {
+      runPrompt(engine, context);
     }
-    if (hadRuntimeError) {
-      System.exit(70);
+
+    if (snapshotOut != null) {
+      try {
+        Files.write(snapshotOut, context.snapshot());
+      } catch (LazyBody.BodyError e) {
+        // A function whose body was never parsed turned out to have errors, now reported.
+        System.exit(65);
+      }
     }
   }
 
-  private static void runPrompt() throws IOException {
-    // These resources are not wrapped in try-with-resources because
-    // System.in should never be closed by hand.
-    var reader = new BufferedReader(new InputStreamReader(System.in, defaultCharset()));
-    while (true) {
-      System.out.print("> ");
-      String line = reader.readLine();
-      if (line == null) {
-        break;
-      }
-      run(line);
+  private static void usage() {
+    System.out.println(
+        "Usage: jlox [--engine=tree|vm] [--no-optimize] [--no-jit] [--lazy] [--cache[=dir]]"
+            + " [--snapshot-in=file] [--snapshot-out=file] [--dump-ast] [script]");
+    System.exit(64);
+  }
 
-      hadError = false;
+  private static void restoreSnapshot(LoxContext context, Path path) throws IOException {
+    byte[] bytes = Files.readAllBytes(path);
+    try {
+      context.restore(bytes);
+    } catch (IllegalStateException e) {
+      System.err.println("Can't restore snapshot " + path + ": " + e.getMessage());
+      System.exit(65);
     }
   }
 
-  private static void run(String source) {
-    List<Token> tokens = new Scanner(source).scanTokens();
-    List<Stmt> statements = new Parser(tokens).parse();
+  private static void runFile(LoxEngine engine, LoxContext context, String path, boolean dumpAst)
+      throws IOException {
+    // Map the file rather than reading it, so that even a huge script takes no room on the heap.
+    // The mapping stays valid after the channel is closed.
+    MappedByteBuffer source;
+    try (var channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+      source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
 
-    // Stop if there was a syntax error.
-    if (hadError) {
+    LoxProgram program;
+    try {
+      program = engine.compile(source);
+    } catch (LoxCompileException e) {
+      System.err.println(e.getMessage());
+      System.exit(65);
       return;
     }
 
-    new Resolver(interpreter).resolve(statements);
-
-    // Stop if there was a resolution error.
-    if (hadError) {
+    if (dumpAst) {
+      var printer = new AstPrinter();
+      program.statements.forEach(statement -> System.out.println(printer.print(statement)));
       return;
     }
 
-    interpreter.interpret(statements);
-  }
-
-  static void error(int line, String message) {
-    report(line, "", message);
+    // Indicate an error in an exit code.
+    switch (context.run(program)) {
+      case OK -> {}
+      case COMPILE_ERROR -> System.exit(65);
+      case RUNTIME_ERROR -> System.exit(70);
+    }
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
-  }
+  private static void runPrompt(LoxEngine engine, LoxContext context) throws IOException {
+    // These resources are not wrapped in try-with-resources because
+    // System.in should never be closed by hand.
+    var reader = new BufferedReader(new InputStreamReader(System.in, defaultCharset()));
+    while (true) {
+      System.out.print("> ");
+      String line = reader.readLine();
+      if (line == null) {
+        break;
+      }
 
-  static void error(Token token, String message) {
-    if (token.type() == TokenType.EOF) {
-      report(token.line(), " at end", message);
-    } else {
-      report(token.line(), " at '" + token.lexeme() + "'", message);
+      try {
+        context.run(engine.compile(line));
+      } catch (LoxCompileException e) {
+        System.err.println(e.getMessage());
+      }
     }
   }
 
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line() + "]");
-    hadRuntimeError = true;
-  }
-
   private Lox() {}
 }
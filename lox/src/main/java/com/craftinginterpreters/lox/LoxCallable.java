@@ -1,9 +1,35 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
+/**
+ * Something Lox code can call.
+ *
+ * <p>Callers check that they are passing {@link #arity()} arguments before calling. Calls with up
+ * to four arguments go through the {@code callN} method for their number of arguments, which lets
+ * implementations take the arguments straight from the caller without collecting them into an
+ * array first. Longer calls fall back to {@link #call(Interpreter, Object[])}.
+ */
 interface LoxCallable {
   int arity();
 
-  Object call(Interpreter interpreter, List<Object> arguments);
+  Object call(Interpreter interpreter, Object[] arguments);
+
+  default Object call0(Interpreter interpreter) {
+    return call(interpreter, new Object[] {});
+  }
+
+  default Object call1(Interpreter interpreter, Object a0) {
+    return call(interpreter, new Object[] {a0});
+  }
+
+  default Object call2(Interpreter interpreter, Object a0, Object a1) {
+    return call(interpreter, new Object[] {a0, a1});
+  }
+
+  default Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+    return call(interpreter, new Object[] {a0, a1, a2});
+  }
+
+  default Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+    return call(interpreter, new Object[] {a0, a1, a2, a3});
+  }
 }
@@ -2,8 +2,6 @@ package com.craftinginterpreters.lox;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import org.jspecify.annotations.Nullable;
 
@@ -11,25 +9,86 @@ final class LoxClass implements LoxCallable {
 
   final String name;
   final @Nullable LoxClass superclass;
-  private final Map<String, LoxFunction> methods;
+  private final SymbolMap<LoxFunction> methods;
+  private final @Nullable LoxFunction initializer;
 
-  public LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+  /**
+   * The shape every instance of this class starts out with, before it has any fields, which it
+   * shares with the other classes made by the same declarations. See {@link RootShapes}.
+   */
+  final Shape rootShape;
+
+  /**
+   * The most fields any instance of this class has had, so new instances can make room up front.
+   */
+  private int expectedFieldCount = 0;
+
+  public LoxClass(
+      String name, LoxClass superclass, SymbolMap<LoxFunction> methods, Shape rootShape) {
     this.name = requireNonNull(name);
     this.superclass = superclass;
     this.methods = requireNonNull(methods);
+    this.rootShape = requireNonNull(rootShape);
+    this.initializer = findMethod(SymbolTable.INIT).orElse(null);
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    var instance = new LoxInstance(this);
+    if (initializer != null) {
+      initializer.invoke(interpreter, instance, arguments);
+    }
+    return instance;
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    var instance = new LoxInstance(this);
+    if (initializer != null) {
+      initializer.invoke0(interpreter, instance);
+    }
+    return instance;
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a0) {
+    var instance = new LoxInstance(this);
+    if (initializer != null) {
+      initializer.invoke1(interpreter, instance, a0);
+    }
+    return instance;
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a0, Object a1) {
+    var instance = new LoxInstance(this);
+    if (initializer != null) {
+      initializer.invoke2(interpreter, instance, a0, a1);
+    }
+    return instance;
   }
 
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
+  public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
     var instance = new LoxInstance(this);
-    findMethod("init")
-        .ifPresent(initializer -> initializer.bind(instance).call(interpreter, arguments));
+    if (initializer != null) {
+      initializer.invoke3(interpreter, instance, a0, a1, a2);
+    }
+    return instance;
+  }
+
+  @Override
+  public Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+    var instance = new LoxInstance(this);
+    if (initializer != null) {
+      initializer.invoke4(interpreter, instance, a0, a1, a2, a3);
+    }
     return instance;
   }
 
   @Override
   public int arity() {
-    return findMethod("init").map(LoxFunction::arity).orElse(0);
+    return initializer != null ? initializer.arity() : 0;
   }
 
   @Override
@@ -37,13 +96,39 @@ final class LoxClass implements LoxCallable {
     return name;
   }
 
-  public Optional<LoxFunction> findMethod(String name) {
-    if (methods.containsKey(name)) {
-      return Optional.of(methods.get(name));
+  /** The methods declared by this class itself, not by its superclasses. */
+  SymbolMap<LoxFunction> methods() {
+    return methods;
+  }
+
+  int expectedFieldCount() {
+    return expectedFieldCount;
+  }
+
+  void sawFieldCount(int fieldCount) {
+    expectedFieldCount = Math.max(expectedFieldCount, fieldCount);
+  }
+
+  /**
+   * Returns the method named by {@code symbol} on the class {@code depth} superclasses up from this
+   * one, which must have it.
+   */
+  LoxFunction methodAt(int depth, int symbol) {
+    LoxClass klass = this;
+    for (int i = 0; i < depth; i++) {
+      klass = requireNonNull(klass.superclass);
+    }
+    return requireNonNull(klass.methods.get(symbol));
+  }
+
+  public Optional<LoxFunction> findMethod(int symbol) {
+    LoxFunction method = methods.get(symbol);
+    if (method != null) {
+      return Optional.of(method);
     }
 
     if (superclass != null) {
-      return superclass.findMethod(name);
+      return superclass.findMethod(symbol);
     }
 
     return Optional.empty();
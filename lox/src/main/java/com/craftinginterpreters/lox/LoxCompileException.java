@@ -0,0 +1,18 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/** Thrown by {@link LoxEngine#compile} when a program has syntax or resolution errors. */
+public final class LoxCompileException extends Exception {
+  private final List<String> errors;
+
+  LoxCompileException(List<String> errors) {
+    super(String.join("\n", errors));
+    this.errors = List.copyOf(errors);
+  }
+
+  /** The errors, such as "[line 1] Error at ';': Expect expression.", in the order found. */
+  public List<String> errors() {
+    return errors;
+  }
+}
@@ -0,0 +1,115 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Somewhere to run {@link LoxProgram}s: a set of globals, a stream that "print" prints to, and a
+ * stream that errors are reported to. Make one with {@link LoxEngine#newContext}.
+ *
+ * <p>Running several programs in one context is like entering them one after another in the REPL:
+ * each sees the globals that the ones before it defined. A context runs one program at a time, on
+ * one thread at a time, but separate contexts share nothing and can run on as many threads as
+ * needed.
+ */
+public final class LoxContext {
+
+  /** How a run of a program ended. */
+  public enum Result {
+    OK,
+    /** A function body that was only parsed when it was called had errors. */
+    COMPILE_ERROR,
+    RUNTIME_ERROR
+  }
+
+  private final long maxSteps;
+  private final @Nullable Duration timeout;
+  private final ErrorReporter errors;
+  private final @Nullable Interpreter interpreter;
+  private final @Nullable VirtualMachine vm;
+
+  LoxContext(
+      boolean useVm,
+      boolean jit,
+      long maxSteps,
+      @Nullable Duration timeout,
+      @Nullable WarmState state,
+      PrintStream out,
+      PrintStream err) {
+    requireNonNull(out);
+    requireNonNull(err);
+    this.maxSteps = maxSteps;
+    this.timeout = timeout;
+    this.errors = new ErrorReporter(err::println);
+    if (useVm) {
+      this.interpreter = null;
+      this.vm = new VirtualMachine(out, errors);
+    } else {
+      this.interpreter =
+          state == null
+              ? new Interpreter(out, errors, jit)
+              : new Interpreter(state, out, errors, jit);
+      this.vm = null;
+    }
+  }
+
+  /**
+   * Runs {@code program}, which must have been compiled by the engine that made this context. Each
+   * run gets the engine's whole step budget and timeout, and stops early if its thread is
+   * interrupted.
+   */
+  public Result run(LoxProgram program) {
+    errors.reset();
+    if (vm != null) {
+      if (program.script == null) {
+        throw new IllegalArgumentException("Program wasn't compiled for the virtual machine");
+      }
+      vm.budget.start(maxSteps, timeout);
+      vm.interpret(program.script);
+    } else {
+      Interpreter interpreter = requireNonNull(this.interpreter);
+      interpreter.budget.start(maxSteps, timeout);
+      interpreter.interpret(program.statements);
+    }
+
+    if (errors.hadError()) {
+      return Result.COMPILE_ERROR;
+    }
+    return errors.hadRuntimeError() ? Result.RUNTIME_ERROR : Result.OK;
+  }
+
+  /**
+   * Captures this context's globals as they are now, for {@link LoxEngine#newContext(WarmState,
+   * PrintStream, PrintStream)} to fork cheap new contexts from. This context carries on with the
+   * same globals, but copies any instance or captured variable they reach before changing it, so
+   * the state never changes.
+   *
+   * @throws IllegalStateException if this context runs programs on the virtual machine, or has
+   *     already changed something reached by a state captured from it
+   */
+  public WarmState capture() {
+    return interpreter().capture();
+  }
+
+  /** Returns this context's globals as a snapshot, which {@link #restore} reads back. */
+  byte[] snapshot() {
+    return new SnapshotWriter(errors).write(interpreter().globals);
+  }
+
+  /** Defines the globals in {@code snapshot}, throwing IllegalStateException if it's corrupt. */
+  void restore(byte[] snapshot) {
+    new SnapshotReader(snapshot).read(interpreter().globals);
+  }
+
+  private Interpreter interpreter() {
+    if (interpreter == null) {
+      // The VirtualMachine's values aren't the Interpreter's, so snapshots and warm states can't
+      // hold them.
+      throw new IllegalStateException("Needs the tree-walking interpreter, not the VM");
+    }
+    return interpreter;
+  }
+}
@@ -0,0 +1,210 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Compiles Lox programs, for running in {@link LoxContext}s. This is the way to run Lox from other
+ * Java code.
+ *
+ * <p>An engine, and every {@link LoxProgram} it compiles, can be shared by any number of threads.
+ * Each run of a program happens in a context, with its own globals, output and errors, so runs
+ * never see each other, however many happen at once:
+ *
+ * <pre>{@code
+ * LoxEngine engine = LoxEngine.builder().build();
+ * LoxProgram program = engine.compile("print \"Hello, world!\";");
+ * LoxContext.Result result = engine.newContext(System.out, System.err).run(program);
+ * }</pre>
+ */
+public final class LoxEngine {
+  private final boolean useVm;
+  private final boolean optimize;
+  private final boolean jit;
+  private final boolean lazy;
+  private final long maxSteps;
+  private final @Nullable Duration timeout;
+  private final @Nullable ProgramCache cache;
+
+  private LoxEngine(Builder builder) {
+    this.useVm = builder.useVm;
+    this.optimize = builder.optimize;
+    this.jit = builder.jit;
+    this.lazy = builder.lazy;
+    this.maxSteps = builder.maxSteps;
+    this.timeout = builder.timeout;
+    this.cache = builder.cacheDirectory == null ? null : new ProgramCache(builder.cacheDirectory);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Compiles {@code source}, throwing {@link LoxCompileException} if it has errors. */
+  public LoxProgram compile(String source) throws LoxCompileException {
+    return compile(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Compiles the UTF-8 source from {@code source}'s position up to its limit, throwing {@link
+   * LoxCompileException} if it has errors.
+   */
+  public LoxProgram compile(ByteBuffer source) throws LoxCompileException {
+    var messages = new ArrayList<String>();
+    var errors = new ErrorReporter(messages::add);
+
+    String key = cache == null ? null : ProgramCache.key(source, optimize);
+    List<Stmt> statements = key == null ? null : cache.load(key);
+    if (statements == null) {
+      statements = compile(source, errors, cache == null);
+      if (errors.hadError()) {
+        throw new LoxCompileException(messages);
+      }
+      if (key != null) {
+        cache.store(key, statements);
+      }
+    }
+
+    BytecodeFunction script = null;
+    if (useVm) {
+      script = new BytecodeCompiler(errors).compile(statements);
+
+      // Stop if the program was too big to compile.
+      if (errors.hadError()) {
+        throw new LoxCompileException(messages);
+      }
+    }
+    return new LoxProgram(statements, script);
+  }
+
+  /**
+   * Scans, parses, resolves and optimizes a program. If {@code mayBeLazy}, function bodies may be
+   * left to parse when they're called.
+   */
+  private List<Stmt> compile(ByteBuffer source, ErrorReporter errors, boolean mayBeLazy) {
+    TokenBuffer tokens = new Scanner(source, errors).scanTokens();
+    // Only the tree-walking Interpreter can parse a function's body when it's called.
+    List<Stmt> statements =
+        new Parser(tokens, errors, mayBeLazy && lazy && !useVm, optimize).parse();
+
+    // Stop if there was a syntax error.
+    if (errors.hadError()) {
+      return statements;
+    }
+
+    new Resolver(errors).resolve(statements);
+
+    // Stop if there was a resolution error.
+    if (errors.hadError()) {
+      return statements;
+    }
+
+    if (optimize) {
+      statements = new Optimizer().optimize(statements);
+      new Resolver(errors).resolve(statements);
+    }
+    return statements;
+  }
+
+  /**
+   * Makes a context to run this engine's programs in, which prints to {@code out} and reports
+   * errors to {@code err}.
+   */
+  public LoxContext newContext(PrintStream out, PrintStream err) {
+    return new LoxContext(useVm, jit, maxSteps, timeout, null, out, err);
+  }
+
+  /**
+   * Makes a context like {@link #newContext(PrintStream, PrintStream)}, but which starts out with
+   * the globals captured in {@code state}, as if it had run the programs that defined them. Forking
+   * a context this way copies nothing up front, so it's cheap enough to do for every request.
+   *
+   * @throws IllegalStateException if this engine runs programs on the virtual machine
+   */
+  public LoxContext newContext(WarmState state, PrintStream out, PrintStream err) {
+    requireNonNull(state);
+    if (useVm) {
+      throw new IllegalStateException("Warm states need the tree-walking interpreter, not the VM");
+    }
+    return new LoxContext(false, jit, maxSteps, timeout, state, out, err);
+  }
+
+  /** Chooses how an engine compiles and runs programs. Each option starts out as jlox's default. */
+  public static final class Builder {
+    private boolean useVm = false;
+    private boolean optimize = true;
+    private boolean jit = true;
+    private boolean lazy = false;
+    private long maxSteps = Long.MAX_VALUE;
+    private @Nullable Duration timeout = null;
+    private @Nullable Path cacheDirectory = null;
+
+    private Builder() {}
+
+    /** Whether to run programs on the bytecode virtual machine, like "--engine=vm". */
+    public Builder useVm(boolean useVm) {
+      this.useVm = useVm;
+      return this;
+    }
+
+    /** Whether to run programs through the optimizer, unlike "--no-optimize". */
+    public Builder optimize(boolean optimize) {
+      this.optimize = optimize;
+      return this;
+    }
+
+    /** Whether to compile hot functions to JVM bytecode, unlike "--no-jit". */
+    public Builder jit(boolean jit) {
+      this.jit = jit;
+      return this;
+    }
+
+    /** Whether to parse top-level functions' bodies when they're first called, like "--lazy". */
+    public Builder lazy(boolean lazy) {
+      this.lazy = lazy;
+      return this;
+    }
+
+    /**
+     * How many steps each run of a program may take, where a step is one iteration of a loop or
+     * one call of a function. A run that takes more stops with a runtime error.
+     */
+    public Builder maxSteps(long maxSteps) {
+      if (maxSteps < 0) {
+        throw new IllegalArgumentException("maxSteps must not be negative: " + maxSteps);
+      }
+      this.maxSteps = maxSteps;
+      return this;
+    }
+
+    /**
+     * How long each run of a program may take. A run that takes longer, or whose thread is
+     * interrupted, stops with a runtime error.
+     */
+    public Builder timeout(Duration timeout) {
+      if (timeout.isNegative()) {
+        throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+      }
+      this.timeout = timeout;
+      return this;
+    }
+
+    /** Where to cache compiled programs, like "--cache=dir". */
+    public Builder cacheDirectory(Path cacheDirectory) {
+      this.cacheDirectory = cacheDirectory;
+      return this;
+    }
+
+    public LoxEngine build() {
+      return new LoxEngine(this);
+    }
+  }
+}
@@ -2,24 +2,67 @@ package com.craftinginterpreters.lox;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.List;
+import org.jspecify.annotations.Nullable;
 
 final class LoxFunction implements LoxCallable {
-  private final Stmt.Function declaration;
-  private final Environment closure;
+  /**
+   * The function's declaration, which is swapped for the full one once a lazy body is parsed. It's
+   * volatile because a function can be shared between threads, through a {@link WarmState}, and a
+   * thread that sees the full declaration must also see everything the Resolver filled in on it.
+   */
+  private volatile Stmt.Function declaration;
+  /** The variables this closure captured from enclosing functions. */
+  final Upvalue[] upvalues;
+
   private final boolean initializer;
 
-  LoxFunction(Stmt.Function declaration, Environment closure, boolean initializer) {
+  /** The instance this method is bound to, which its frame holds in slot 0 as "this". */
+  private final @Nullable LoxInstance receiver;
+
+  // How many times this function has been called, and how many loop iterations it has run, in the
+  // Interpreter. Once they add up to JitCompiler.THRESHOLD, the function is compiled.
+  private int invocations = 0;
+  int backEdges = 0;
+
+  LoxFunction(Stmt.Function declaration, Upvalue[] upvalues, boolean initializer) {
+    this(declaration, upvalues, initializer, null);
+  }
+
+  LoxFunction(
+      Stmt.Function declaration,
+      Upvalue[] upvalues,
+      boolean initializer,
+      @Nullable LoxInstance receiver) {
     this.declaration = requireNonNull(declaration, "declaration");
-    this.closure = requireNonNull(closure, "closure");
+    this.upvalues = requireNonNull(upvalues, "upvalues");
     this.initializer = initializer;
+    this.receiver = receiver;
+  }
+
+  /**
+   * Returns the function's declaration, parsing its body first if it hasn't been yet, and reporting
+   * any errors in it to {@code errors}.
+   */
+  Stmt.Function declaration(ErrorReporter errors) {
+    Stmt.Function declaration = this.declaration;
+    LazyBody lazyBody = declaration.lazyBody;
+    if (lazyBody != null) {
+      declaration = lazyBody.parse(errors);
+      this.declaration = declaration;
+    }
+    return declaration;
+  }
+
+  boolean isInitializer() {
+    return initializer;
+  }
+
+  @Nullable LoxInstance receiver() {
+    return receiver;
   }
 
   LoxFunction bind(LoxInstance instance) {
-    requireNonNull(instance);
-    var environment = new Environment(closure);
-    environment.define("this", instance);
-    return new LoxFunction(declaration, environment, initializer);
+    return new LoxFunction(declaration, upvalues, initializer, requireNonNull(instance));
   }
 
   @Override
@@ -28,43 +71,184 @@ final class LoxFunction implements LoxCallable {
   }
 
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
-    var environment = new Environment(closure);
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme(), arguments.get(i));
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    return invoke(interpreter, receiver, arguments);
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    return invoke0(interpreter, receiver);
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a0) {
+    return invoke1(interpreter, receiver, a0);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a0, Object a1) {
+    return invoke2(interpreter, receiver, a0, a1);
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+    return invoke3(interpreter, receiver, a0, a1, a2);
+  }
+
+  @Override
+  public Object call4(Interpreter interpreter, Object a0, Object a1, Object a2, Object a3) {
+    return invoke4(interpreter, receiver, a0, a1, a2, a3);
+  }
+
+  // The invoke methods call this function with "this" as the given instance, if it is a method.
+  // They're like bind(instance).call(...), but without creating the bound method.
+
+  Object invoke(Interpreter interpreter, @Nullable LoxInstance instance, Object[] arguments) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call(interpreter, upvalues, instance, arguments);
+    }
+    int frame = newFrame(interpreter, instance);
+    int slot = firstArgumentSlot(frame, instance);
+    for (Object argument : arguments) {
+      interpreter.stack.set(slot++, argument);
+    }
+    return execute(interpreter, instance, frame);
+  }
+
+  Object invoke0(Interpreter interpreter, @Nullable LoxInstance instance) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call0(interpreter, upvalues, instance);
+    }
+    return execute(interpreter, instance, newFrame(interpreter, instance));
+  }
+
+  Object invoke1(Interpreter interpreter, @Nullable LoxInstance instance, Object a0) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call1(interpreter, upvalues, instance, a0);
+    }
+    int frame = newFrame(interpreter, instance);
+    int slot = firstArgumentSlot(frame, instance);
+    interpreter.stack.set(slot, a0);
+    return execute(interpreter, instance, frame);
+  }
+
+  Object invoke2(Interpreter interpreter, @Nullable LoxInstance instance, Object a0, Object a1) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call2(interpreter, upvalues, instance, a0, a1);
+    }
+    int frame = newFrame(interpreter, instance);
+    int slot = firstArgumentSlot(frame, instance);
+    interpreter.stack.set(slot, a0);
+    interpreter.stack.set(slot + 1, a1);
+    return execute(interpreter, instance, frame);
+  }
+
+  Object invoke3(
+      Interpreter interpreter, @Nullable LoxInstance instance, Object a0, Object a1, Object a2) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call3(interpreter, upvalues, instance, a0, a1, a2);
+    }
+    int frame = newFrame(interpreter, instance);
+    int slot = firstArgumentSlot(frame, instance);
+    interpreter.stack.set(slot, a0);
+    interpreter.stack.set(slot + 1, a1);
+    interpreter.stack.set(slot + 2, a2);
+    return execute(interpreter, instance, frame);
+  }
+
+  Object invoke4(
+      Interpreter interpreter,
+      @Nullable LoxInstance instance,
+      Object a0,
+      Object a1,
+      Object a2,
+      Object a3) {
+    CompiledFunction compiled = compiled(interpreter, instance);
+    if (compiled != null) {
+      return compiled.call4(interpreter, upvalues, instance, a0, a1, a2, a3);
+    }
+    int frame = newFrame(interpreter, instance);
+    int slot = firstArgumentSlot(frame, instance);
+    interpreter.stack.set(slot, a0);
+    interpreter.stack.set(slot + 1, a1);
+    interpreter.stack.set(slot + 2, a2);
+    interpreter.stack.set(slot + 3, a3);
+    return execute(interpreter, instance, frame);
+  }
+
+  /**
+   * Returns this function's compiled code, compiling it first if it has become hot, or null if it
+   * should keep running in the Interpreter. Either way, its body has been parsed once this returns.
+   */
+  private @Nullable CompiledFunction compiled(
+      Interpreter interpreter, @Nullable LoxInstance instance) {
+    Stmt.Function declaration = declaration(interpreter.errors);
+    if (!interpreter.jit) {
+      return null;
     }
 
-    try {
-      interpreter.executeBlock(declaration.body, environment);
-    } catch (Return returnValue) {
-      if (initializer) {
-        // The Resolve ensures that Lox code never tries to return a value from an initializer.
-        // For example, this is invalid:
-        //
-        //     class Foo {
-        //       init() {
-        //         return "foo"; <- invalid
-        //       }
-        //     }
-        //
-        // Therefore this point could only have ever been reached with a return that doesn't have a
-        // value. For example:
-        //
-        //     class Foo {
-        //       init() {
-        //         return; <- only possible kind of return
-        //       }
-        //     }
-        //
-        // In this case, the return returns `this`, similar to how calling an instance's `init()`
-        // directly returns `this` too.
-        return closure.getAt(0, "this");
+    // Compiled code is kept on the declaration, so that every closure and bound method made from
+    // the same declaration shares it, as does every run of the program on any thread. Two threads
+    // may both compile it at once, in which case either's code will do.
+    if (declaration.compiled == null
+        && !declaration.uncompilable
+        && ++invocations + backEdges >= JitCompiler.THRESHOLD) {
+      CompiledFunction compiled = JitCompiler.compile(declaration, instance != null, initializer);
+      if (compiled == null) {
+        declaration.uncompilable = true;
       }
+      declaration.compiled = compiled;
+    }
+    return declaration.compiled;
+  }
+
+  /** Starts a frame for a call on the Interpreter's stack, and returns where it begins. */
+  private int newFrame(Interpreter interpreter, @Nullable LoxInstance instance) {
+    int frame = interpreter.newFrame(declaration.frameSize);
+    if (instance != null) {
+      interpreter.stack.set(frame, instance);
+    }
+    return frame;
+  }
+
+  /** Returns the slot of the first argument, which follows the receiver if there is one. */
+  private static int firstArgumentSlot(int frame, @Nullable LoxInstance instance) {
+    return instance == null ? frame : frame + 1;
+  }
 
-      return returnValue.value;
+  private Object execute(Interpreter interpreter, @Nullable LoxInstance instance, int frame) {
+    Completion completion = interpreter.executeFunction(this, declaration, frame);
+    if (initializer) {
+      // The Resolver ensures that Lox code never tries to return a value from an initializer.
+      // For example, this is invalid:
+      //
+      //     class Foo {
+      //       init() {
+      //         return "foo"; <- invalid
+      //       }
+      //     }
+      //
+      // Therefore an initializer can only have finished by running off its end, or by a return
+      // that doesn't have a value. For example:
+      //
+      //     class Foo {
+      //       init() {
+      //         return; <- only possible kind of return
+      //       }
+      //     }
+      //
+      // In either case, it returns `this`, similar to how calling an instance's `init()` directly
+      // returns `this` too.
+      interpreter.takeReturnValue();
+      return requireNonNull(instance);
     }
 
-    return initializer ? closure.getAt(0, "this") : null;
+    return completion == Completion.RETURN ? interpreter.takeReturnValue() : null;
   }
 
   @Override
@@ -2,38 +2,97 @@ package com.craftinginterpreters.lox;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Optional;
+import org.jspecify.annotations.Nullable;
 
 final class LoxInstance {
 
   private final LoxClass klass;
-  private final Map<String, Object> fields = new HashMap<>();
+
+  /** Where each field is in {@link #values}. Shared with other instances of the class. */
+  private Shape shape;
+
+  private Object[] values;
+
+  /**
+   * Whether this instance belongs to a {@link WarmState}, so that interpreters write to copies of
+   * it rather than to it.
+   */
+  boolean frozen = false;
+
+  /** The frozen instance that this is an interpreter's copy of, or null if it isn't a copy. */
+  private final @Nullable LoxInstance original;
 
   LoxInstance(LoxClass klass) {
     this.klass = requireNonNull(klass);
+    this.shape = klass.rootShape;
+    this.values = new Object[klass.expectedFieldCount()];
+    this.original = null;
+  }
+
+  private LoxInstance(LoxInstance original) {
+    this.klass = original.klass;
+    this.shape = original.shape;
+    this.values = original.values.clone();
+    this.original = original;
+  }
+
+  /** Returns a copy of this frozen instance, with the same fields, for an interpreter to write. */
+  LoxInstance copy() {
+    return new LoxInstance(this);
+  }
+
+  /** Returns the instance that Lox code knows this as, which is the original if this is a copy. */
+  LoxInstance original() {
+    return original != null ? original : this;
   }
 
   Object get(Token name) {
-    if (fields.containsKey(name.lexeme())) {
-      return fields.get(name.lexeme());
+    int index = shape.indexOf(name.symbol());
+    if (index != -1) {
+      return values[index];
     }
 
-    Optional<LoxFunction> method = klass.findMethod(name.lexeme());
+    Optional<LoxFunction> method = klass.findMethod(name.symbol());
     if (method.isPresent()) {
-      return method.get().bind(this);
+      return method.get().bind(original());
     }
 
     throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
   }
 
+  LoxClass klass() {
+    return klass;
+  }
+
+  Shape shape() {
+    return shape;
+  }
+
+  Object field(int index) {
+    return values[index];
+  }
+
   @Override
   public String toString() {
     return klass.name + " instance";
   }
 
   void set(Token name, Object value) {
-    fields.put(name.lexeme(), value);
+    set(name.symbol(), value);
+  }
+
+  void set(int symbol, Object value) {
+    int index = shape.indexOf(symbol);
+    if (index == -1) {
+      index = shape.size();
+      shape = shape.withField(symbol);
+      if (index == values.length) {
+        values = Arrays.copyOf(values, index + 1);
+      }
+      klass.sawFieldCount(shape.size());
+    }
+    values[index] = value;
   }
 }
@@ -0,0 +1,25 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A program compiled by a {@link LoxEngine}, which can be run any number of times, in any number of
+ * {@link LoxContext}s, on any number of threads at once.
+ *
+ * <p>Nothing that one run does to the program can be seen by another. The only things that change
+ * are what the program has learned about itself while running, such as which functions are hot,
+ * what types their operators see and what shapes of instances its property reads see. None of that
+ * depends on any one run's values, so every run shares it.
+ */
+public final class LoxProgram {
+  final List<Stmt> statements;
+
+  /** The program compiled for the {@link VirtualMachine}, if its engine runs programs there. */
+  final @Nullable BytecodeFunction script;
+
+  LoxProgram(List<Stmt> statements, @Nullable BytecodeFunction script) {
+    this.statements = List.copyOf(statements);
+    this.script = script;
+  }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The instructions of the {@link VirtualMachine}.
+ *
+ * <p>These are plain {@code byte} constants rather than an enum so that the VM can switch on the
+ * bytes of a {@link Chunk} directly. Unless stated otherwise, an operand is a two-byte, big-endian
+ * unsigned index.
+ */
+final class OpCode {
+  /** Pushes the constant at the operand's index. */
+  static final byte CONSTANT = 0;
+
+  static final byte NIL = 1;
+  static final byte TRUE = 2;
+  static final byte FALSE = 3;
+  static final byte POP = 4;
+
+  /** Pushes the local in the operand's stack slot, relative to the current call frame. */
+  static final byte GET_LOCAL = 5;
+
+  static final byte SET_LOCAL = 6;
+
+  /** Pushes the global named by the constant at the operand's index. */
+  static final byte GET_GLOBAL = 7;
+
+  static final byte DEFINE_GLOBAL = 8;
+  static final byte SET_GLOBAL = 9;
+
+  /** Pushes the variable captured by the current closure at the operand's index. */
+  static final byte GET_UPVALUE = 10;
+
+  static final byte SET_UPVALUE = 11;
+
+  /** Replaces the instance on top of the stack with its property named by the operand constant. */
+  static final byte GET_PROPERTY = 12;
+
+  static final byte SET_PROPERTY = 13;
+
+  /** Pops a superclass and an instance, and pushes the superclass's method bound to it. */
+  static final byte GET_SUPER = 14;
+
+  static final byte EQUAL = 15;
+  static final byte GREATER = 16;
+  static final byte GREATER_EQUAL = 17;
+  static final byte LESS = 18;
+  static final byte LESS_EQUAL = 19;
+  static final byte ADD = 20;
+  static final byte SUBTRACT = 21;
+  static final byte MULTIPLY = 22;
+  static final byte DIVIDE = 23;
+  static final byte NOT = 24;
+  static final byte NEGATE = 25;
+  static final byte PRINT = 26;
+
+  /** Jumps forward by the operand. */
+  static final byte JUMP = 27;
+
+  /** Jumps forward by the operand if the top of the stack is falsey, without popping it. */
+  static final byte JUMP_IF_FALSE = 28;
+
+  /** Jumps backward by the operand. */
+  static final byte LOOP = 29;
+
+  /** Calls the value below the arguments, whose count is the single-byte operand. */
+  static final byte CALL = 30;
+
+  /**
+   * Calls the method named by the first operand's constant on the instance below the arguments,
+   * whose count is the single-byte second operand, without creating a bound method.
+   */
+  static final byte INVOKE = 31;
+
+  /** Like {@link #INVOKE}, but pops the superclass to look the method up in from the top. */
+  static final byte SUPER_INVOKE = 32;
+
+  /**
+   * Pushes a closure over the function constant at the operand's index. The function's upvalue
+   * count of (one-byte is-local flag, two-byte index) pairs follows.
+   */
+  static final byte CLOSURE = 33;
+
+  /** Moves the local on top of the stack into the heap for the closures that captured it. */
+  static final byte CLOSE_UPVALUE = 34;
+
+  static final byte RETURN = 35;
+
+  /** Pushes a new class named by the constant at the operand's index. */
+  static final byte CLASS = 36;
+
+  /** Copies the methods of the superclass below the top class into it, leaving both in place. */
+  static final byte INHERIT = 37;
+
+  /** Pops a closure and adds it as a method, named by the operand constant, to the class below. */
+  static final byte METHOD = 38;
+
+  private OpCode() {}
+}
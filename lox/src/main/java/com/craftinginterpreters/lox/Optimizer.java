@@ -0,0 +1,337 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Rewrites a resolved program into one that does the same thing with less work at runtime.
+ *
+ * <p>It folds operators whose operands are literals into a literal, including concatenating string
+ * literals; simplifies "!", "and" and "or" when the outcome is known up front; drops branches and
+ * loops whose condition is a literal that rules them out; and replaces reads of a local variable
+ * with the literal it was declared with, if it is never assigned again. Operations on literals that
+ * would fail at runtime, like subtracting a string, are left for the Interpreter to report.
+ *
+ * <p>It builds new nodes rather than changing the ones it's given, so the program it returns must
+ * be resolved again for the {@link Resolver} to fill in the new nodes.
+ */
+final class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+  /** What the optimizer knows about a local variable's value wherever the variable is in scope. */
+  private record Binding(boolean isConstant, @Nullable Object value) {}
+
+  private static final Binding UNKNOWN = new Binding(false, null);
+
+  /** Stands in for a statement that was optimized away. */
+  private static final Stmt NOTHING = new Stmt.Block(List.of());
+
+  private final Stack<SymbolMap<Binding>> scopes = new Stack<>();
+
+  List<Stmt> optimize(List<Stmt> statements) {
+    return optimizeAll(statements);
+  }
+
+  private List<Stmt> optimizeAll(List<Stmt> statements) {
+    var optimized = new ArrayList<Stmt>(statements.size());
+    for (Stmt statement : statements) {
+      Stmt result = optimize(statement);
+      if (result != NOTHING) {
+        optimized.add(result);
+      }
+    }
+    return optimized;
+  }
+
+  private Stmt optimize(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  private Expr optimize(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private @Nullable Expr optimizeOrNull(@Nullable Expr expr) {
+    return expr == null ? null : optimize(expr);
+  }
+
+  /** Returns {@code stmt}, or an empty block in its place if it was optimized away. */
+  private static Stmt orEmpty(Stmt stmt) {
+    return stmt == NOTHING ? new Stmt.Block(List.of()) : stmt;
+  }
+
+  /** Optimizes an expression that is only ever tested for truthiness, like an "if" condition. */
+  private Expr optimizeCondition(Expr expr) {
+    Expr optimized = optimize(expr);
+    // "!!x" has the same truthiness as "x", so it only needs converting to a Boolean if its value
+    // is used for something else.
+    while (optimized instanceof Expr.Unary outer
+        && outer.operator.type() == TokenType.BANG
+        && outer.right instanceof Expr.Unary inner
+        && inner.operator.type() == TokenType.BANG) {
+      optimized = inner.right;
+    }
+    return optimized;
+  }
+
+  private void beginScope() {
+    scopes.push(new SymbolMap<>());
+  }
+
+  private void endScope() {
+    scopes.pop();
+  }
+
+  private void declare(Token name, Binding binding) {
+    if (!scopes.isEmpty()) {
+      scopes.peek().put(name.symbol(), binding);
+    }
+  }
+
+  /**
+   * Returns what's known about the variable that {@code name} refers to, looking it up the same
+   * way the Resolver does.
+   */
+  private Binding lookUp(Token name) {
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      Binding binding = scopes.get(i).get(name.symbol());
+      if (binding != null) {
+        return binding;
+      }
+    }
+    // Globals can be redefined at any time.
+    return UNKNOWN;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    return new Expr.Assign(expr.name, optimize(expr.value));
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr left = optimize(expr.left);
+    Expr right = optimize(expr.right);
+
+    if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+      Object folded = fold(expr.operator.type(), l.value, r.value);
+      if (folded != null) {
+        return new Expr.Literal(folded);
+      }
+    }
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  /** Returns the value of a binary operator on two literals, or null if it can't be folded. */
+  private static @Nullable Object fold(
+      TokenType operator, @Nullable Object left, @Nullable Object right) {
+    if (operator == TokenType.EQUAL_EQUAL) {
+      return Interpreter.isEqual(left, right);
+    }
+    if (operator == TokenType.BANG_EQUAL) {
+      return !Interpreter.isEqual(left, right);
+    }
+    if (operator == TokenType.PLUS && left instanceof String l && right instanceof String r) {
+      return l + r;
+    }
+    if (!(left instanceof Double l) || !(right instanceof Double r)) {
+      return null;
+    }
+    return switch (operator) {
+      case PLUS -> l + r;
+      case MINUS -> l - r;
+      case STAR -> l * r;
+      case SLASH -> l / r;
+      case GREATER -> l > r;
+      case GREATER_EQUAL -> l >= r;
+      case LESS -> l < r;
+      case LESS_EQUAL -> l <= r;
+      default -> null;
+    };
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    Expr callee = optimize(expr.callee);
+    List<Expr> arguments = expr.arguments.stream().map(this::optimize).toList();
+    return new Expr.Call(callee, expr.paren, arguments);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    return new Expr.Get(optimize(expr.object), expr.name);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    // Grouping only matters to the parser.
+    return optimize(expr.expression);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    Expr left = optimize(expr.left);
+    Expr right = optimize(expr.right);
+
+    if (left instanceof Expr.Literal literal) {
+      boolean leftDecides =
+          (expr.operator.type() == TokenType.OR) == Interpreter.isTruthy(literal.value);
+      return leftDecides ? left : right;
+    }
+
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    return new Expr.Set(optimize(expr.object), expr.name, optimize(expr.value));
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr right = optimize(expr.right);
+
+    if (right instanceof Expr.Literal literal) {
+      if (expr.operator.type() == TokenType.BANG) {
+        return new Expr.Literal(!Interpreter.isTruthy(literal.value));
+      }
+      if (expr.operator.type() == TokenType.MINUS && literal.value instanceof Double value) {
+        return new Expr.Literal(-value);
+      }
+    }
+
+    return new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    Binding binding = lookUp(expr.name);
+    if (binding.isConstant()) {
+      return new Expr.Literal(binding.value());
+    }
+    return expr;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    beginScope();
+    List<Stmt> statements = optimizeAll(stmt.statements);
+    endScope();
+    return new Stmt.Block(statements);
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    declare(stmt.name, UNKNOWN);
+    List<Stmt.Function> methods = stmt.methods.stream().map(this::optimizeFunction).toList();
+    return new Stmt.Class(stmt.name, stmt.superclass, methods);
+  }
+
+  @Override
+  public Stmt visitContinueStmt(Stmt.Continue stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expression = optimize(stmt.expression);
+    if (expression instanceof Expr.Literal) {
+      return NOTHING;
+    }
+    return new Stmt.Expression(expression);
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    declare(stmt.name, UNKNOWN);
+    return optimizeFunction(stmt);
+  }
+
+  private Stmt.Function optimizeFunction(Stmt.Function function) {
+    if (function.lazyBody != null) {
+      // The body is optimized once it's parsed, as the Parser arranged.
+      return function;
+    }
+
+    beginScope();
+    for (Token param : function.params) {
+      declare(param, UNKNOWN);
+    }
+    List<Stmt> body = optimizeAll(function.body);
+    endScope();
+    return new Stmt.Function(function.name, function.params, body);
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = optimizeCondition(stmt.condition);
+    Stmt thenBranch = optimize(stmt.thenBranch);
+    Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+
+    if (condition instanceof Expr.Literal literal) {
+      if (Interpreter.isTruthy(literal.value)) {
+        return thenBranch;
+      }
+      return elseBranch == null ? NOTHING : elseBranch;
+    }
+
+    return new Stmt.If(
+        condition, orEmpty(thenBranch), elseBranch == NOTHING ? null : elseBranch);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    return new Stmt.Print(optimize(stmt.expression));
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    return new Stmt.Return(stmt.keyword, optimizeOrNull(stmt.value));
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = optimizeOrNull(stmt.initializer);
+
+    if (!stmt.assigned && (initializer == null || initializer instanceof Expr.Literal)) {
+      Object value = initializer == null ? null : ((Expr.Literal) initializer).value;
+      declare(stmt.name, new Binding(true, value));
+    } else {
+      declare(stmt.name, UNKNOWN);
+    }
+
+    return new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = optimizeCondition(stmt.condition);
+    if (condition instanceof Expr.Literal literal && !Interpreter.isTruthy(literal.value)) {
+      return NOTHING;
+    }
+
+    Stmt body = orEmpty(optimize(stmt.body));
+    return new Stmt.While(stmt.keyword, condition, body, optimizeOrNull(stmt.increment));
+  }
+}
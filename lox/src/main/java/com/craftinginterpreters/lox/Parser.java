@@ -3,8 +3,10 @@ package com.craftinginterpreters.lox;
 import static com.craftinginterpreters.lox.TokenType.AND;
 import static com.craftinginterpreters.lox.TokenType.BANG;
 import static com.craftinginterpreters.lox.TokenType.BANG_EQUAL;
+import static com.craftinginterpreters.lox.TokenType.BREAK;
 import static com.craftinginterpreters.lox.TokenType.CLASS;
 import static com.craftinginterpreters.lox.TokenType.COMMA;
+import static com.craftinginterpreters.lox.TokenType.CONTINUE;
 import static com.craftinginterpreters.lox.TokenType.DOT;
 import static com.craftinginterpreters.lox.TokenType.ELSE;
 import static com.craftinginterpreters.lox.TokenType.EOF;
@@ -69,6 +71,8 @@ import org.jspecify.annotations.Nullable;
  * varDecl        → "var" IDENTIFIER ( "=" expression )? ";" ;
  *
  * statement      → exprStmt
+ *                | breakStmt
+ *                | continueStmt
  *                | forStmt
  *                | ifStmt
  *                | printStmt
@@ -78,6 +82,9 @@ import org.jspecify.annotations.Nullable;
  *
  * returnStmt     → "return" expression? ";" ;
  *
+ * breakStmt      → "break" ";" ;
+ * continueStmt   → "continue" ";" ;
+ *
  * forStmt        → "for" "(" ( varDecl | exprStmt | ";" )
  *                  expression? ";"
  *                  expression? ")" statement ;
@@ -113,29 +120,74 @@ final class Parser {
 
   private static final int MAX_NUM_ARGS = 255;
 
-  private final List<Token> tokens;
-  private int current = 0;
+  private final TokenBuffer tokens;
+  private final ErrorReporter errors;
+
+  /** The index in {@link #tokens} of the next token to parse. */
+  private int current;
+
+  /** The index of the token to stop parsing at, as if it were the end of the program. */
+  private final int end;
+
+  /** Whether to skip top-level functions' bodies, leaving a {@link LazyBody} in their place. */
+  private final boolean lazy;
+
+  /** Whether each {@link LazyBody} is to be optimized once it's parsed, like the rest. */
+  private final boolean optimize;
+
+  Parser(TokenBuffer tokens, ErrorReporter errors) {
+    this(tokens, errors, false, false);
+  }
+
+  Parser(TokenBuffer tokens, ErrorReporter errors, boolean lazy, boolean optimize) {
+    this(tokens, errors, 0, tokens.size(), lazy, optimize);
+  }
 
-  Parser(List<Token> tokens) {
-    this.tokens = List.copyOf(requireNonNull(tokens));
+  private Parser(
+      TokenBuffer tokens,
+      ErrorReporter errors,
+      int start,
+      int end,
+      boolean lazy,
+      boolean optimize) {
+    this.tokens = requireNonNull(tokens);
+    this.errors = requireNonNull(errors);
+    this.current = start;
+    this.end = end;
+    this.lazy = lazy;
+    this.optimize = optimize;
   }
 
   List<Stmt> parse() {
     var statements = new ArrayList<Stmt>();
     while (!isAtEnd()) {
-      statements.add(declaration());
+      statements.add(declaration(lazy));
     }
 
     return Collections.unmodifiableList(statements);
   }
 
-  private Stmt declaration() {
+  /**
+   * Parses the declaration of a function that starts at its name, at index {@code start}, and
+   * ends just before {@code end}, returning null if it is so broken that there's nothing to return.
+   */
+  static Stmt.@Nullable Function parseFunction(
+      TokenBuffer tokens, ErrorReporter errors, int start, int end) {
+    var parser = new Parser(tokens, errors, start, end, false, false);
+    try {
+      return parser.function("function", false);
+    } catch (ParseError error) {
+      return null;
+    }
+  }
+
+  private Stmt declaration(boolean skipFunctionBody) {
     try {
       if (match(CLASS)) {
         return classDeclaration();
       }
       if (match(FUN)) {
-        return function("function");
+        return function("function", skipFunctionBody);
       }
       if (match(VAR)) {
         return varDeclaration();
@@ -149,19 +201,18 @@ final class Parser {
   }
 
   private Stmt classDeclaration() {
-    Token name = consume(IDENTIFIER, "Expect class name.");
+    Token name = consumeToken(IDENTIFIER, "Expect class name.");
 
     Expr.Variable superclass = null;
     if (match(LESS)) {
-      consume(IDENTIFIER, "Expect superclass name.");
-      superclass = new Expr.Variable(previous());
+      superclass = new Expr.Variable(consumeToken(IDENTIFIER, "Expect superclass name."));
     }
 
     consume(LEFT_BRACE, "Expect '{' before class body.");
 
     var methods = new ArrayList<Stmt.Function>();
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      methods.add(function("method"));
+      methods.add(function("method", false));
     }
 
     consume(RIGHT_BRACE, "Expect '}' after class body.");
@@ -169,8 +220,9 @@ final class Parser {
     return new Stmt.Class(name, superclass, methods);
   }
 
-  private Stmt.Function function(String kind) {
-    Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+  private Stmt.Function function(String kind, boolean skipBody) {
+    int start = current;
+    Token name = consumeToken(IDENTIFIER, "Expect " + kind + " name.");
     consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
     var parameters = new ArrayList<Token>();
     if (!check(RIGHT_PAREN)) {
@@ -183,18 +235,24 @@ final class Parser {
           error(peek(), "Can't have more than 255 parameters.");
         }
 
-        parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+        parameters.add(consumeToken(IDENTIFIER, "Expect parameter name."));
       } while (match(COMMA));
     }
     consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
     consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+    if (skipBody) {
+      skipBlock();
+      var function = new Stmt.Function(name, parameters, List.of());
+      function.lazyBody = new LazyBody(tokens, start, current, optimize);
+      return function;
+    }
     List<Stmt> body = block();
     return new Stmt.Function(name, parameters, body);
   }
 
   private Stmt varDeclaration() {
-    Token name = consume(IDENTIFIER, "Expect variable name.");
+    Token name = consumeToken(IDENTIFIER, "Expect variable name.");
 
     Expr initializer = match(EQUAL) ? expression() : null;
 
@@ -203,6 +261,12 @@ final class Parser {
   }
 
   private Stmt statement() {
+    if (match(BREAK)) {
+      return breakStatement();
+    }
+    if (match(CONTINUE)) {
+      return continueStatement();
+    }
     if (match(FOR)) {
       return forStatement();
     }
@@ -226,6 +290,7 @@ final class Parser {
   }
 
   private Stmt forStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
     @Nullable Stmt initializer;
@@ -250,14 +315,11 @@ final class Parser {
     consume(RIGHT_PAREN, "Expect ')' after for clauses.");
     Stmt body = statement();
 
-    if (increment != null) {
-      body = new Stmt.Block(List.of(body, new Stmt.Expression(increment)));
-    }
-
     if (condition == null) {
       condition = new Expr.Literal(true);
     }
-    body = new Stmt.While(condition, body);
+    // The increment is kept apart from the body so that "continue" still runs it.
+    body = new Stmt.While(keyword, condition, body, increment);
 
     if (initializer != null) {
       body = new Stmt.Block(List.of(initializer, body));
@@ -291,13 +353,26 @@ final class Parser {
     return new Stmt.Return(keyword, value);
   }
 
+  private Stmt breakStatement() {
+    Token keyword = previous();
+    consume(SEMICOLON, "Expect ';' after 'break'.");
+    return new Stmt.Break(keyword);
+  }
+
+  private Stmt continueStatement() {
+    Token keyword = previous();
+    consume(SEMICOLON, "Expect ';' after 'continue'.");
+    return new Stmt.Continue(keyword);
+  }
+
   private Stmt whileStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "Expect '(' after 'while'.");
     Expr condition = expression();
     consume(RIGHT_PAREN, "Expect ')' after condition.");
     Stmt body = statement();
 
-    return new Stmt.While(condition, body);
+    return new Stmt.While(keyword, condition, body, null);
   }
 
   private Stmt expressionStatement() {
@@ -310,13 +385,29 @@ final class Parser {
     List<Stmt> statements = new ArrayList<>();
 
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      statements.add(declaration());
+      statements.add(declaration(false));
     }
 
     consume(RIGHT_BRACE, "Expect '}' after block.");
     return statements;
   }
 
+  /** Skips the rest of a block whose "{" was just consumed, only checking that braces balance. */
+  private void skipBlock() {
+    int depth = 1;
+    while (!isAtEnd()) {
+      TokenType type = tokens.type(current);
+      advance();
+      if (type == LEFT_BRACE) {
+        depth++;
+      } else if (type == RIGHT_BRACE && --depth == 0) {
+        return;
+      }
+    }
+
+    throw error(peek(), "Expect '}' after block.");
+  }
+
   private Expr expression() {
     return assignment();
   }
@@ -325,7 +416,7 @@ final class Parser {
     Expr expr = or();
 
     if (match(EQUAL)) {
-      Token equals = previous();
+      int equals = current - 1;
       Expr value = assignment();
 
       if (expr instanceof Expr.Variable var) {
@@ -340,7 +431,7 @@ final class Parser {
       // we need to go into panic mode and synchronize."
 
       //noinspection ThrowableNotThrown
-      error(equals, "Invalid assignment target.");
+      error(tokens.token(equals), "Invalid assignment target.");
     }
 
     return expr;
@@ -385,7 +476,7 @@ final class Parser {
   private Expr comparison() {
     Expr expr = term();
 
-    while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
+    while (match(GREATER, GREATER_EQUAL) || match(LESS, LESS_EQUAL)) {
       Token operator = previous();
       Expr right = term();
       expr = new Expr.Binary(expr, operator, right);
@@ -435,7 +526,7 @@ final class Parser {
       if (match(LEFT_PAREN)) {
         expr = finishCall(expr);
       } else if (match(DOT)) {
-        Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+        Token name = consumeToken(IDENTIFIER, "Expect property name after '.'.");
         expr = new Expr.Get(expr, name);
       } else {
         break;
@@ -461,7 +552,7 @@ final class Parser {
       } while (match(COMMA));
     }
 
-    Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+    Token paren = consumeToken(RIGHT_PAREN, "Expect ')' after arguments.");
 
     return new Expr.Call(callee, paren, arguments);
   }
@@ -478,13 +569,13 @@ final class Parser {
     }
 
     if (match(NUMBER, STRING)) {
-      return new Expr.Literal(previous().literal());
+      return new Expr.Literal(tokens.literal(current - 1));
     }
 
     if (match(SUPER)) {
       Token keyword = previous();
       consume(DOT, "Expect '.' after 'super'.");
-      Token method = consume(IDENTIFIER, "Expect superclass method name.");
+      Token method = consumeToken(IDENTIFIER, "Expect superclass method name.");
       return new Expr.Super(keyword, method);
     }
 
@@ -505,52 +596,61 @@ final class Parser {
     throw error(peek(), "Expect expression.");
   }
 
-  private boolean match(TokenType... types) {
-    for (TokenType type : types) {
-      if (check(type)) {
-        advance();
-        return true;
-      }
+  // These only look at the types of tokens, so that only the tokens a node keeps are ever made
+  // into Token objects, by previous(), consumeToken() or peek(). There's no varargs match(), since
+  // the array it takes would be allocated on every call.
+
+  private boolean match(TokenType type) {
+    if (check(type)) {
+      advance();
+      return true;
     }
     return false;
   }
 
-  private Token consume(TokenType type, String message) {
-    if (check(type)) {
-      return advance();
+  private boolean match(TokenType first, TokenType second) {
+    return match(first) || match(second);
+  }
+
+  private void consume(TokenType type, String message) {
+    if (!check(type)) {
+      throw error(peek(), message);
     }
+    advance();
+  }
 
-    throw error(peek(), message);
+  private Token consumeToken(TokenType type, String message) {
+    consume(type, message);
+    return previous();
   }
 
   private boolean check(TokenType type) {
     if (isAtEnd()) {
       return false;
     }
-    return peek().type() == type;
+    return tokens.type(current) == type;
   }
 
-  private Token advance() {
+  private void advance() {
     if (!isAtEnd()) {
       current++;
     }
-    return previous();
   }
 
   private boolean isAtEnd() {
-    return peek().type() == EOF;
+    return current == end || tokens.type(current) == EOF;
   }
 
   private Token peek() {
-    return tokens.get(current);
+    return tokens.token(current);
   }
 
   private Token previous() {
-    return tokens.get(current - 1);
+    return tokens.token(current - 1);
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    errors.error(token, message);
     return new ParseError();
   }
 
@@ -558,11 +658,11 @@ final class Parser {
     advance();
 
     while (!isAtEnd()) {
-      if (previous().type() == SEMICOLON) {
+      if (tokens.type(current - 1) == SEMICOLON) {
         return;
       }
 
-      switch (peek().type()) {
+      switch (tokens.type(current)) {
         case CLASS:
         case FUN:
         case VAR:
@@ -571,6 +671,8 @@ final class Parser {
         case WHILE:
         case PRINT:
         case RETURN:
+        case BREAK:
+        case CONTINUE:
           return;
       }
 
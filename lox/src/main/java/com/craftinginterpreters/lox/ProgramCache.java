@@ -0,0 +1,100 @@
+package com.craftinginterpreters.lox;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A directory of ".loxc" files, each holding a program that has already been scanned, parsed,
+ * resolved and optimized, so running the same script again can skip all of that.
+ *
+ * <p>A program is filed under a hash of its source, of whether it was optimized, and of {@link
+ * #VERSION}, so changing any of those makes a fresh entry rather than reusing a stale one. Only
+ * programs without errors are stored. The cache is only ever a shortcut: if an entry can't be read
+ * or written, for whatever reason, the program is compiled from its source as usual.
+ */
+final class ProgramCache {
+  /** "LOXC", which every cache file starts with. */
+  private static final int MAGIC = 0x4c4f5843;
+
+  /** The version of the cache file format. Change it whenever the AST or the AstWriter changes. */
+  private static final int VERSION = 2;
+
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+  private final Path directory;
+
+  ProgramCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /** Returns the key that the program in {@code source} is cached under. */
+  static String key(ByteBuffer source, boolean optimized) {
+    return Hashing.sha256()
+        .newHasher()
+        .putInt(VERSION)
+        .putBoolean(optimized)
+        .putBytes(source.duplicate())
+        .hash()
+        .toString();
+  }
+
+  /** Returns the program cached under {@code key}, or null if there isn't a usable one. */
+  @Nullable List<Stmt> load(String key) {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file(key));
+    } catch (IOException e) {
+      // Most likely, the program just hasn't been cached yet.
+      return null;
+    }
+
+    var header = ByteBuffer.wrap(bytes);
+    if (bytes.length < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+      return null;
+    }
+    try {
+      return new AstReader(bytes, HEADER_SIZE).read();
+    } catch (IllegalStateException e) {
+      // The file is corrupt, so it's as good as missing.
+      return null;
+    }
+  }
+
+  /** Caches {@code program} under {@code key}, if it can. */
+  void store(String key, List<Stmt> program) {
+    byte[] tree = new AstWriter().write(program);
+    byte[] bytes =
+        ByteBuffer.allocate(HEADER_SIZE + tree.length)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .put(tree)
+            .array();
+    try {
+      Files.createDirectories(directory);
+      // Write to a temporary file first, so that no one ever reads a partly written entry.
+      Path temporary = Files.createTempFile(directory, key, ".tmp");
+      try {
+        Files.write(temporary, bytes);
+        Files.move(
+            temporary,
+            file(key),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      // Leave the program uncached; it'll be compiled from source next time too.
+    }
+  }
+
+  private Path file(String key) {
+    return directory.resolve(key + ".loxc");
+  }
+}
@@ -2,19 +2,20 @@ package com.craftinginterpreters.lox;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.jspecify.annotations.Nullable;
 
 final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-  private final Interpreter interpreter;
-  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  private final ErrorReporter errors;
+  private final Stack<SymbolMap<Local>> scopes = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
 
-  Resolver(Interpreter interpreter) {
-    this.interpreter = requireNonNull(interpreter, "interpreter");
-  }
+  /** How many loops the code being resolved is nested in, within the innermost function. */
+  private int loopDepth = 0;
 
   private enum FunctionType {
     NONE,
@@ -29,8 +30,59 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     SUBCLASS
   }
 
+  /** A local variable declared in some scope, and the slot it occupies in its function's frame. */
+  private static final class Local {
+    final int slot;
+    boolean defined = false;
+    boolean captured = false;
+
+    /** The statement that declared this variable, if it was declared with "var". */
+    Stmt.@Nullable Var declaration = null;
+
+    Local(int slot) {
+      this.slot = slot;
+    }
+  }
+
+  /** A function being resolved, and the variables it captures from enclosing functions. */
+  private static final class FunctionScope {
+    final @Nullable FunctionScope enclosing;
+
+    /** The index in {@link #scopes} of the function's outermost scope. */
+    final int base;
+
+    final List<Capture> captures = new ArrayList<>();
+
+    /** The index of each captured variable among {@link #captures}. */
+    final Map<Local, Integer> upvalues = new HashMap<>();
+
+    /** How many of the function's frame slots the variables now in scope occupy. */
+    int localCount = 0;
+
+    /** The most slots in use at once so far, within the innermost block being resolved. */
+    int maxLocals = 0;
+
+    Local newLocal() {
+      var local = new Local(localCount++);
+      maxLocals = Math.max(maxLocals, localCount);
+      return local;
+    }
+
+    FunctionScope(@Nullable FunctionScope enclosing, int base) {
+      this.enclosing = enclosing;
+      this.base = base;
+    }
+  }
+
   private ClassType currentClass = ClassType.NONE;
 
+  /** The innermost function being resolved, where top-level code counts as a function too. */
+  private FunctionScope functionScope = new FunctionScope(null, 0);
+
+  Resolver(ErrorReporter errors) {
+    this.errors = requireNonNull(errors);
+  }
+
   void resolve(List<Stmt> statements) {
     statements.forEach(this::resolve);
   }
@@ -44,24 +96,54 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private void beginScope() {
-    scopes.push(new HashMap<>());
+    scopes.push(new SymbolMap<>());
   }
 
   private void endScope() {
+    functionScope.localCount -= scopes.peek().size();
     scopes.pop();
   }
 
-  private void declare(Token name) {
+  /**
+   * Returns the lowest slot of the innermost scope's variables that closures capture, or -1 if
+   * closures capture none of them.
+   */
+  private int firstCapturedSlot() {
+    int first = -1;
+    for (Local local : scopes.peek().values()) {
+      if (local.captured && (first == -1 || local.slot < first)) {
+        first = local.slot;
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Declares a variable that is defined from the start of the innermost scope, like "this", and
+   * returns its slot.
+   */
+  private int defineImplicit(int symbol) {
+    Local local = functionScope.newLocal();
+    local.defined = true;
+    scopes.peek().put(symbol, local);
+    return local.slot;
+  }
+
+  /** Declares a variable in the innermost scope and returns its slot, or -1 if it is a global. */
+  private int declare(Token name) {
     if (scopes.isEmpty()) {
-      return;
+      return -1;
     }
 
-    Map<String, Boolean> innermostScope = scopes.peek();
-    if (innermostScope.containsKey(name.lexeme())) {
-      Lox.error(name, "Already a variable with this name in this scope.");
+    SymbolMap<Local> innermostScope = scopes.peek();
+    if (innermostScope.containsKey(name.symbol())) {
+      errors.error(name, "Already a variable with this name in this scope.");
+      return -1;
     }
 
-    innermostScope.put(name.lexeme(), false);
+    Local local = functionScope.newLocal();
+    innermostScope.put(name.symbol(), local);
+    return local.slot;
   }
 
   private void define(Token name) {
@@ -69,23 +151,74 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       return;
     }
 
-    Map<String, Boolean> innermostScope = scopes.peek();
-    innermostScope.put(name.lexeme(), true);
+    SymbolMap<Local> innermostScope = scopes.peek();
+    requireNonNull(innermostScope.get(name.symbol())).defined = true;
   }
 
-  private void resolveLocal(Expr expr, Token name) {
+  /**
+   * Finds the scope that declares {@code name}, returning how many scopes out it is, the variable's
+   * slot in its function's frame and, if that is an enclosing function, the upvalue the innermost
+   * function reads it through; or {@code null} if {@code name} is a global.
+   */
+  private @Nullable Location resolveLocal(Token name) {
+    return resolveLocal(name.symbol());
+  }
+
+  private @Nullable Location resolveLocal(int symbol) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme())) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
-        return;
+      Local local = scopes.get(i).get(symbol);
+      if (local != null) {
+        int upvalue = i < functionScope.base ? capture(functionScope, local, i) : -1;
+        return new Location(scopes.size() - 1 - i, local, upvalue);
       }
     }
+    return null;
+  }
+
+  /**
+   * Returns the index of the upvalue that {@code function} reads {@code local} through, capturing
+   * it in {@code function} and any functions in between if need be. The variable is declared in
+   * {@code scopes.get(scope)}, which belongs to an enclosing function.
+   */
+  private static int capture(FunctionScope function, Local local, int scope) {
+    Integer existing = function.upvalues.get(local);
+    if (existing != null) {
+      return existing;
+    }
+
+    FunctionScope enclosing = requireNonNull(function.enclosing);
+    Capture capture;
+    if (scope >= enclosing.base) {
+      local.captured = true;
+      capture = new Capture(true, local.slot);
+    } else {
+      capture = new Capture(false, capture(enclosing, local, scope));
+    }
+    function.captures.add(capture);
+    int index = function.captures.size() - 1;
+    function.upvalues.put(local, index);
+    return index;
+  }
+
+  private record Location(int depth, Local local, int upvalue) {
+    int slot() {
+      return local.slot;
+    }
   }
 
   @Override
   public Void visitAssignExpr(Expr.Assign expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    Location location = resolveLocal(expr.name);
+    if (location != null) {
+      expr.depth = location.depth();
+      expr.slot = location.slot();
+      expr.upvalue = location.upvalue();
+      Stmt.Var declaration = location.local().declaration;
+      if (declaration != null) {
+        declaration.assigned = true;
+      }
+    }
     return null;
   }
 
@@ -139,23 +272,37 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitSuperExpr(Expr.Super expr) {
     if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+      errors.error(expr.keyword, "Can't use 'super' outside of a class.");
     } else if (currentClass != ClassType.SUBCLASS) {
-      Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+      errors.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
     }
 
-    resolveLocal(expr, expr.keyword);
+    Location location = resolveLocal(expr.keyword);
+    if (location != null) {
+      expr.depth = location.depth();
+      expr.slot = location.slot();
+      expr.upvalue = location.upvalue();
+    }
+    Location thisLocation = resolveLocal(SymbolTable.THIS);
+    if (thisLocation != null) {
+      expr.thisUpvalue = thisLocation.upvalue();
+    }
     return null;
   }
 
   @Override
   public Void visitThisExpr(Expr.This expr) {
     if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+      errors.error(expr.keyword, "Can't use 'this' outside of a class.");
       return null;
     }
 
-    resolveLocal(expr, expr.keyword);
+    Location location = resolveLocal(expr.keyword);
+    if (location != null) {
+      expr.depth = location.depth();
+      expr.slot = location.slot();
+      expr.upvalue = location.upvalue();
+    }
     return null;
   }
 
@@ -168,21 +315,59 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitVariableExpr(Expr.Variable expr) {
     if (!scopes.isEmpty()) {
-      Map<String, Boolean> innermostScope = scopes.peek();
-      if (innermostScope.get(expr.name.lexeme()) == Boolean.FALSE) {
-        Lox.error(expr.name, "Can't read local variable in its own initializer.");
+      Local local = scopes.peek().get(expr.name.symbol());
+      if (local != null && !local.defined) {
+        errors.error(expr.name, "Can't read local variable in its own initializer.");
       }
     }
 
-    resolveLocal(expr, expr.name);
+    Location location = resolveLocal(expr.name);
+    if (location != null) {
+      expr.depth = location.depth();
+      expr.slot = location.slot();
+      expr.upvalue = location.upvalue();
+    }
     return null;
   }
 
   @Override
   public Void visitBlockStmt(Stmt.Block stmt) {
+    if (!declaresVariables(stmt.statements)) {
+      // Without a scope of its own, the block's code sees the same scopes as the code around it.
+      stmt.hasScope = false;
+      resolve(stmt.statements);
+      return null;
+    }
+
+    int enclosingMaxLocals = functionScope.maxLocals;
+    functionScope.maxLocals = functionScope.localCount;
+
     beginScope();
     resolve(stmt.statements);
+    stmt.firstCapturedSlot = firstCapturedSlot();
     endScope();
+
+    stmt.frameSize = functionScope.maxLocals;
+    functionScope.maxLocals = Math.max(enclosingMaxLocals, functionScope.maxLocals);
+    return null;
+  }
+
+  private static boolean declaresVariables(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      if (statement instanceof Stmt.Var
+          || statement instanceof Stmt.Function
+          || statement instanceof Stmt.Class) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    if (loopDepth == 0) {
+      errors.error(stmt.keyword, "Can't use 'break' outside of a loop.");
+    }
     return null;
   }
 
@@ -191,11 +376,11 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     ClassType enclosingClass = currentClass;
     currentClass = ClassType.CLASS;
 
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
-    if (stmt.superclass != null && stmt.name.lexeme().equals(stmt.superclass.name.lexeme())) {
-      Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+    if (stmt.superclass != null && stmt.name.symbol() == stmt.superclass.name.symbol()) {
+      errors.error(stmt.superclass.name, "A class can't inherit from itself.");
     }
 
     if (stmt.superclass != null) {
@@ -205,23 +390,16 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     if (stmt.superclass != null) {
       beginScope();
-      Map<String, Boolean> innermostScope = scopes.peek();
-      innermostScope.put("super", true);
+      stmt.superSlot = defineImplicit(SymbolTable.SUPER);
     }
 
-    beginScope();
-    Map<String, Boolean> innermostScope = scopes.peek();
-    innermostScope.put("this", true);
-
     for (Stmt.Function method : stmt.methods) {
       var declaration =
-          method.name.lexeme().equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+          method.name.symbol() == SymbolTable.INIT ? FunctionType.INITIALIZER : FunctionType.METHOD;
 
       resolveFunction(method, declaration);
     }
 
-    endScope();
-
     if (stmt.superclass != null) {
       endScope();
     }
@@ -230,6 +408,14 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    if (loopDepth == 0) {
+      errors.error(stmt.keyword, "Can't use 'continue' outside of a loop.");
+    }
+    return null;
+  }
+
   @Override
   public Void visitExpressionStmt(Stmt.Expression stmt) {
     resolve(stmt.expression);
@@ -238,7 +424,7 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
     define(stmt.name);
 
     resolveFunction(stmt, FunctionType.FUNCTION);
@@ -248,15 +434,27 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private void resolveFunction(Stmt.Function function, FunctionType type) {
     FunctionType enclosingFunction = currentFunction;
     currentFunction = type;
+    int enclosingLoopDepth = loopDepth;
+    loopDepth = 0;
+    functionScope = new FunctionScope(functionScope, scopes.size());
 
     beginScope();
+    if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+      // A method's frame holds its receiver in slot 0, ahead of its parameters.
+      defineImplicit(SymbolTable.THIS);
+    }
     for (Token param : function.params) {
       declare(param);
       define(param);
     }
     resolve(function.body);
+    function.firstCapturedSlot = firstCapturedSlot();
     endScope();
+    function.frameSize = functionScope.maxLocals;
+    function.captures = List.copyOf(functionScope.captures);
+    functionScope = requireNonNull(functionScope.enclosing);
     currentFunction = enclosingFunction;
+    loopDepth = enclosingLoopDepth;
   }
 
   @Override
@@ -278,12 +476,12 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitReturnStmt(Stmt.Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      Lox.error(stmt.keyword, "Can't return from top-level code.");
+      errors.error(stmt.keyword, "Can't return from top-level code.");
     }
 
     if (stmt.value != null) {
       if (currentFunction == FunctionType.INITIALIZER) {
-        Lox.error(stmt.keyword, "Can't return a value from an initializer.");
+        errors.error(stmt.keyword, "Can't return a value from an initializer.");
       }
 
       resolve(stmt.value);
@@ -294,7 +492,10 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitVarStmt(Stmt.Var stmt) {
-    declare(stmt.name);
+    stmt.slot = declare(stmt.name);
+    if (!scopes.isEmpty()) {
+      requireNonNull(scopes.peek().get(stmt.name.symbol())).declaration = stmt;
+    }
     if (stmt.initializer != null) {
       resolve(stmt.initializer);
     }
@@ -305,7 +506,12 @@ final class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitWhileStmt(Stmt.While stmt) {
     resolve(stmt.condition);
+    loopDepth++;
     resolve(stmt.body);
+    loopDepth--;
+    if (stmt.increment != null) {
+      resolve(stmt.increment);
+    }
     return null;
   }
 }
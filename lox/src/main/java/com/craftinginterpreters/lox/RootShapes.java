@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import com.google.common.collect.MapMaker;
+import java.util.concurrent.ConcurrentMap;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The root shapes of the classes that one {@link Stmt.Class} declaration makes, kept on the
+ * declaration so that every class it makes, in every run of its program, shares them.
+ *
+ * <p>Two classes share a root shape only if they were made by the same declaration and their
+ * superclasses share a root shape too. A shape therefore tells which declaration made each class in
+ * an instance's chain of superclasses, and so which of them has each method, even though every run
+ * makes classes of its own. That lets an {@link InlineCache} on a program that many contexts run
+ * see the same few shapes from all of them.
+ */
+final class RootShapes {
+  private final Shape withoutSuperclass = new Shape();
+
+  /**
+   * The root shape for each superclass's root shape. The keys are weak, so the shapes of classes
+   * that aren't shared, such as those read from a snapshot, don't pile up here.
+   */
+  private final ConcurrentMap<Shape, Shape> bySuperclass = new MapMaker().weakKeys().makeMap();
+
+  /** Returns the root shape of a class made by this declaration with {@code superclass}. */
+  Shape rootShape(@Nullable LoxClass superclass) {
+    if (superclass == null) {
+      return withoutSuperclass;
+    }
+    return bySuperclass.computeIfAbsent(superclass.rootShape, key -> new Shape());
+  }
+}
@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A Lox string made by concatenating two others, without copying either.
+ *
+ * <p>A Lox string is either a {@link String} or a rope. Concatenating long strings makes a rope
+ * that refers to both halves, so building a string piece by piece takes time in proportion to the
+ * pieces rather than to the square of the result's length. The characters are only copied into a
+ * single String when something needs them, like printing or comparing the string, and the rope
+ * keeps that String so it's only done once.
+ */
+final class Rope {
+  /** Concatenations shorter than this are copied straight away, which is cheaper at that size. */
+  private static final int MIN_LENGTH = 64;
+
+  // Each half is a String or a Rope, until the rope is flattened.
+  private @Nullable Object left;
+  private @Nullable Object right;
+  private final int length;
+  private @Nullable String flattened = null;
+
+  private Rope(Object left, Object right, int length) {
+    this.left = left;
+    this.right = right;
+    this.length = length;
+  }
+
+  static boolean isString(@Nullable Object value) {
+    return value instanceof String || value instanceof Rope;
+  }
+
+  /** Concatenates two Lox strings. */
+  static Object concat(Object left, Object right) {
+    int length = Math.addExact(length(left), length(right));
+    if (length < MIN_LENGTH) {
+      // A rope is never this short, so both halves are Strings.
+      return (String) left + right;
+    }
+    return new Rope(left, right, length);
+  }
+
+  private static int length(Object string) {
+    return string instanceof Rope rope ? rope.length : ((String) string).length();
+  }
+
+  @Override
+  public String toString() {
+    if (flattened == null) {
+      flattened = flatten();
+      // The halves aren't needed any more, so let them be garbage collected.
+      left = null;
+      right = null;
+    }
+    return flattened;
+  }
+
+  private String flatten() {
+    var builder = new StringBuilder(length);
+    // Ropes built in a loop lean heavily to one side, so walk them without recursing.
+    var pending = new ArrayDeque<Object>();
+    pending.push(this);
+    while (!pending.isEmpty()) {
+      Object next = pending.pop();
+      if (next instanceof Rope rope && rope.flattened == null) {
+        pending.push(rope.right);
+        pending.push(rope.left);
+      } else {
+        builder.append(next);
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    return other instanceof Rope rope
+        && length == rope.length
+        && toString().equals(rope.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
@@ -3,8 +3,10 @@ package com.craftinginterpreters.lox;
 import static com.craftinginterpreters.lox.TokenType.AND;
 import static com.craftinginterpreters.lox.TokenType.BANG;
 import static com.craftinginterpreters.lox.TokenType.BANG_EQUAL;
+import static com.craftinginterpreters.lox.TokenType.BREAK;
 import static com.craftinginterpreters.lox.TokenType.CLASS;
 import static com.craftinginterpreters.lox.TokenType.COMMA;
+import static com.craftinginterpreters.lox.TokenType.CONTINUE;
 import static com.craftinginterpreters.lox.TokenType.DOT;
 import static com.craftinginterpreters.lox.TokenType.ELSE;
 import static com.craftinginterpreters.lox.TokenType.EQUAL;
@@ -39,18 +41,29 @@ import static com.craftinginterpreters.lox.TokenType.TRUE;
 import static com.craftinginterpreters.lox.TokenType.VAR;
 import static com.craftinginterpreters.lox.TokenType.WHILE;
 import static java.util.Map.entry;
+import static java.util.Objects.requireNonNull;
 import static java.util.Objects.requireNonNullElse;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+/**
+ * Splits a Lox program into tokens.
+ *
+ * <p>It reads the program as UTF-8 bytes straight out of a {@link ByteBuffer}, which for a script
+ * is the file mapped into memory, so the program is never decoded into one big String. Everything
+ * outside string literals and comments is ASCII, so only string literals need decoding. The tokens
+ * go into a {@link TokenBuffer}, which refers back to the source for their lexemes.
+ */
 final class Scanner {
 
   private static final Map<String, TokenType> KEYWORD_TO_TOKEN =
       Map.ofEntries(
           entry("and", AND),
+          entry("break", BREAK),
           entry("class", CLASS),
+          entry("continue", CONTINUE),
           entry("else", ELSE),
           entry("false", FALSE),
           entry("for", FOR),
@@ -66,29 +79,35 @@ final class Scanner {
           entry("var", VAR),
           entry("while", WHILE));
 
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+  private final ByteBuffer source;
+  private final int length;
+  private final TokenBuffer tokens;
+  private final ErrorReporter errors;
   private int start = 0;
   private int current = 0;
   private int line = 1;
 
-  Scanner(String source) {
-    this.source = source;
+  /** Scans the UTF-8 bytes from {@code source}'s position up to its limit. */
+  Scanner(ByteBuffer source, ErrorReporter errors) {
+    this.source = source.slice();
+    this.length = this.source.limit();
+    this.tokens = new TokenBuffer(this.source);
+    this.errors = requireNonNull(errors);
   }
 
-  List<Token> scanTokens() {
+  TokenBuffer scanTokens() {
     while (!isAtEnd()) {
       // We are at the beginning of the next lexeme.
       start = current;
       scanToken();
     }
 
-    tokens.add(new Token(TokenType.EOF, "", null, line));
+    tokens.add(TokenType.EOF, current, 0, line);
     return tokens;
   }
 
   private void scanToken() {
-    char c = advance();
+    byte c = advance();
     switch (c) {
       case '(':
         addToken(LEFT_PAREN);
@@ -164,7 +183,11 @@ final class Scanner {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Lox.error(line, "Unexpected character.");
+          // Skip the rest of a character that takes several bytes, so it's only reported once.
+          while (isContinuationByte(peek())) {
+            advance();
+          }
+          errors.error(line, "Unexpected character.");
         }
         break;
     }
@@ -175,9 +198,16 @@ final class Scanner {
       advance();
     }
 
-    String text = source.substring(start, current);
+    String text = ascii(start, current);
     var typeToken = KEYWORD_TO_TOKEN.get(text);
-    addToken(requireNonNullElse(typeToken, IDENTIFIER));
+    // "this" and "super" are keywords, but they name variables too.
+    if (typeToken != null && typeToken != THIS && typeToken != SUPER) {
+      addToken(typeToken);
+      return;
+    }
+
+    TokenType type = requireNonNullElse(typeToken, IDENTIFIER);
+    tokens.addIdentifier(type, start, current - start, line, SymbolTable.intern(text));
   }
 
   private void number() {
@@ -195,7 +225,8 @@ final class Scanner {
       }
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    double value = Double.parseDouble(ascii(start, current));
+    tokens.addLiteral(NUMBER, start, current - start, line, value);
   }
 
   private void string() {
@@ -207,7 +238,7 @@ final class Scanner {
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+      errors.error(line, "Unterminated string.");
       return;
     }
 
@@ -215,8 +246,8 @@ final class Scanner {
     advance();
 
     // Trim the surrounding quotes.
-    String value = source.substring(start + 1, current - 1);
-    addToken(STRING, value);
+    String value = decode(start + 1, current - 1);
+    tokens.addLiteral(STRING, start, current - start, line, value);
   }
 
   private void blockComment() {
@@ -228,7 +259,7 @@ final class Scanner {
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated block comment.");
+      errors.error(line, "Unterminated block comment.");
       return;
     }
 
@@ -245,7 +276,7 @@ final class Scanner {
     if (isAtEnd()) {
       return false;
     }
-    if (source.charAt(current) != expected) {
+    if (source.get(current) != expected) {
       return false;
     }
 
@@ -253,46 +284,61 @@ final class Scanner {
     return true;
   }
 
-  private char peek() {
+  private byte peek() {
     if (isAtEnd()) {
       return '\0';
     }
-    return source.charAt(current);
+    return source.get(current);
   }
 
-  private char peekNext() {
-    if (current + 1 >= source.length()) {
+  private byte peekNext() {
+    if (current + 1 >= length) {
       return '\0';
     }
-    return source.charAt(current + 1);
+    return source.get(current + 1);
   }
 
-  private boolean isAlphaNumeric(char c) {
+  private boolean isAlphaNumeric(byte c) {
     return isAlpha(c) || isDigit(c);
   }
 
-  private boolean isAlpha(char c) {
+  private boolean isAlpha(byte c) {
     return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c == '_');
   }
 
-  private boolean isDigit(char c) {
+  private boolean isDigit(byte c) {
     return c >= '0' && c <= '9';
   }
 
+  /** Whether {@code c} continues a UTF-8 character begun by an earlier byte. */
+  private boolean isContinuationByte(byte c) {
+    return (c & 0xc0) == 0x80;
+  }
+
   private boolean isAtEnd() {
-    return current >= source.length();
+    return current >= length;
   }
 
-  private char advance() {
-    return source.charAt(current++);
+  private byte advance() {
+    return source.get(current++);
   }
 
   private void addToken(TokenType type) {
-    addToken(type, null);
+    tokens.add(type, start, current - start, line);
+  }
+
+  /** Returns the source from {@code from} up to {@code to}, which must all be ASCII. */
+  private String ascii(int from, int to) {
+    return new String(bytes(from, to), StandardCharsets.US_ASCII);
+  }
+
+  private String decode(int from, int to) {
+    return new String(bytes(from, to), StandardCharsets.UTF_8);
   }
 
-  private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+  private byte[] bytes(int from, int to) {
+    var bytes = new byte[to - from];
+    source.get(from, bytes);
+    return bytes;
   }
 }
@@ -0,0 +1,65 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * The layout of an instance's fields: which field is stored at which index of the instance's array
+ * of values.
+ *
+ * <p>Every class owns a root shape with no fields, which its instances start out with. Adding a
+ * field moves an instance to the child shape for that field's {@link SymbolTable symbol}, which is
+ * created the first time an instance takes that step and shared by every instance that takes it
+ * afterwards. Instances that get the same fields in the same order, which is usually all instances
+ * of a class, therefore end up sharing a shape, so each one only needs to hold its values.
+ */
+final class Shape {
+  private final SymbolMap<Integer> indexes;
+
+  /** The symbol of the field at each index. */
+  private final int[] symbols;
+
+  private final SymbolMap<Shape> transitions = new SymbolMap<>();
+
+  Shape() {
+    this.indexes = new SymbolMap<>();
+    this.symbols = new int[0];
+  }
+
+  private Shape(Shape parent, int symbol) {
+    var indexes = new SymbolMap<>(parent.indexes);
+    indexes.put(symbol, parent.size());
+    this.indexes = indexes;
+    this.symbols = Arrays.copyOf(parent.symbols, parent.size() + 1);
+    this.symbols[parent.size()] = symbol;
+  }
+
+  /** How many fields an instance with this shape has. */
+  int size() {
+    return indexes.size();
+  }
+
+  /** Returns the index of the field named by {@code symbol}, or -1 if there isn't one. */
+  int indexOf(int symbol) {
+    Integer index = indexes.get(symbol);
+    return index == null ? -1 : index;
+  }
+
+  /** Returns the symbol of the field at {@code index}. */
+  int symbol(int index) {
+    return symbols[index];
+  }
+
+  /**
+   * Returns the shape of an instance with this shape after the field {@code symbol} is added. It's
+   * synchronized because instances of a class shared between interpreters, through a {@link
+   * WarmState}, may be given fields on several threads at once.
+   */
+  synchronized Shape withField(int symbol) {
+    Shape child = transitions.get(symbol);
+    if (child == null) {
+      child = new Shape(this, symbol);
+      transitions.put(symbol, child);
+    }
+    return child;
+  }
+}
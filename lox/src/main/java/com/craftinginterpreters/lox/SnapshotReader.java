@@ -0,0 +1,139 @@
+package com.craftinginterpreters.lox;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteStreams;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reads back globals written by {@link SnapshotWriter}, defining them in an {@link Environment}.
+ *
+ * <p>Bytes that aren't a snapshot written by SnapshotWriter make it throw {@link
+ * IllegalStateException}.
+ */
+final class SnapshotReader {
+  private final ByteArrayDataInput in;
+  private final AstReader ast;
+
+  /** The objects created so far, in the order they were written. */
+  private final List<Object> objects = new ArrayList<>();
+
+  SnapshotReader(byte[] bytes) {
+    var header = ByteBuffer.wrap(bytes);
+    if (bytes.length < 2 * Integer.BYTES
+        || header.getInt() != SnapshotWriter.MAGIC
+        || header.getInt() != SnapshotWriter.VERSION) {
+      throw new IllegalStateException("Not a snapshot of this version");
+    }
+    this.in = ByteStreams.newDataInput(bytes, 2 * Integer.BYTES);
+    this.ast = new AstReader(in);
+  }
+
+  void read(Environment globals) {
+    while (true) {
+      byte tag = in.readByte();
+      switch (tag) {
+        case SnapshotWriter.END:
+          return;
+        case SnapshotWriter.DECLARATION:
+          objects.add(ast.readFunction());
+          break;
+        case SnapshotWriter.FUNCTION:
+          objects.add(readFunction());
+          break;
+        case SnapshotWriter.CLASS:
+          objects.add(readClass());
+          break;
+        case SnapshotWriter.INSTANCE:
+          objects.add(new LoxInstance(readObject(LoxClass.class)));
+          break;
+        case SnapshotWriter.UPVALUE:
+          objects.add(new Upvalue(null));
+          break;
+        case SnapshotWriter.SET_UPVALUE:
+          readObject(Upvalue.class).set(readValue());
+          break;
+        case SnapshotWriter.SET_FIELD:
+          readObject(LoxInstance.class).set(readSymbol(), readValue());
+          break;
+        case SnapshotWriter.GLOBAL:
+          globals.define(readSymbol(), readValue());
+          break;
+        default:
+          throw new IllegalStateException("Unknown record tag " + tag);
+      }
+    }
+  }
+
+  private LoxFunction readFunction() {
+    Stmt.Function declaration = readObject(Stmt.Function.class);
+    boolean initializer = in.readBoolean();
+    LoxInstance receiver = readObjectOrNull(LoxInstance.class);
+    var upvalues = new Upvalue[ast.readCount()];
+    for (int i = 0; i < upvalues.length; i++) {
+      upvalues[i] = readObject(Upvalue.class);
+    }
+    return new LoxFunction(declaration, upvalues, initializer, receiver);
+  }
+
+  private LoxClass readClass() {
+    String name = ast.readString();
+    LoxClass superclass = readObjectOrNull(LoxClass.class);
+    int count = ast.readCount();
+    var methods = new SymbolMap<LoxFunction>();
+    for (int i = 0; i < count; i++) {
+      methods.put(readSymbol(), readObject(LoxFunction.class));
+    }
+    // A class read back has no declaration to share shapes through.
+    return new LoxClass(name, superclass, methods, new Shape());
+  }
+
+  private int readSymbol() {
+    return SymbolTable.intern(ast.readString());
+  }
+
+  private @Nullable Object readValue() {
+    byte tag = in.readByte();
+    return switch (tag) {
+      case SnapshotWriter.NIL -> null;
+      case SnapshotWriter.FALSE -> false;
+      case SnapshotWriter.TRUE -> true;
+      case SnapshotWriter.NUMBER -> in.readDouble();
+      case SnapshotWriter.STRING -> ast.readString();
+      case SnapshotWriter.OBJECT -> readObject(Object.class);
+      case SnapshotWriter.BUILTIN -> readBuiltin();
+      default -> throw new IllegalStateException("Unknown value tag " + tag);
+    };
+  }
+
+  private Builtin readBuiltin() {
+    String name = ast.readString();
+    try {
+      return Builtin.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("Unknown builtin " + name, e);
+    }
+  }
+
+  private <T> T readObject(Class<T> type) {
+    T object = readObjectOrNull(type);
+    if (object == null) {
+      throw new IllegalStateException("Missing " + type.getSimpleName());
+    }
+    return object;
+  }
+
+  /** Reads the number of an object created earlier, which is -1 for none. */
+  private <T> @Nullable T readObjectOrNull(Class<T> type) {
+    int id = in.readInt();
+    if (id == -1) {
+      return null;
+    }
+    if (id < 0 || id >= objects.size() || !type.isInstance(objects.get(id))) {
+      throw new IllegalStateException("Expected a " + type.getSimpleName() + " at " + id);
+    }
+    return type.cast(objects.get(id));
+  }
+}
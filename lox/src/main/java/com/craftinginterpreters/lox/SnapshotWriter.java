@@ -0,0 +1,203 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Writes the globals of a program that has finished running as bytes, which {@link
+ * SnapshotReader} turns back into the same globals, so a later run can start from them without
+ * running the program again.
+ *
+ * <p>The globals' values form a graph of classes, functions, instances and the upvalues that
+ * functions captured, which may be shared and may have cycles. Each object in it is written once,
+ * as a record that creates it, and given the next number; everywhere else it is written as that
+ * number. An object is only created after every object that it needs in order to be created, such
+ * as a bound method's receiver, but the values of upvalues and fields are set by records of their
+ * own, after whatever they hold has been created. Function declarations are written by an {@link
+ * AstWriter}, which shares the stream.
+ */
+final class SnapshotWriter {
+  /** "LOXS", which every snapshot starts with. */
+  static final int MAGIC = 0x4c4f5853;
+
+  /** The version of the snapshot format. Change it whenever the AST or the AstWriter changes. */
+  static final int VERSION = 2;
+
+  // The tags of the kinds of record.
+  static final byte END = 0;
+  static final byte DECLARATION = 1;
+  static final byte FUNCTION = 2;
+  static final byte CLASS = 3;
+  static final byte INSTANCE = 4;
+  static final byte UPVALUE = 5;
+  static final byte SET_UPVALUE = 6;
+  static final byte SET_FIELD = 7;
+  static final byte GLOBAL = 8;
+
+  // The tags of the kinds of value.
+  static final byte NIL = 0;
+  static final byte FALSE = 1;
+  static final byte TRUE = 2;
+  static final byte NUMBER = 3;
+  static final byte STRING = 4;
+  static final byte OBJECT = 5;
+  static final byte BUILTIN = 6;
+
+  private final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+  private final AstWriter ast = new AstWriter(out);
+  private final Map<Object, Integer> ids = new IdentityHashMap<>();
+
+  /** The upvalues and instances that have been created, but whose contents are yet to be set. */
+  private final Queue<Object> unfilled = new ArrayDeque<>();
+
+  /** Where errors go in the bodies of functions that have to be parsed so they can be written. */
+  private final ErrorReporter errors;
+
+  SnapshotWriter(ErrorReporter errors) {
+    this.errors = requireNonNull(errors);
+  }
+
+  byte[] write(Environment globals) {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    for (int symbol : globals.symbols()) {
+      Object value = globals.get(symbol);
+      create(value);
+      out.writeByte(GLOBAL);
+      ast.write(SymbolTable.name(symbol));
+      writeValue(value);
+    }
+
+    for (Object object = unfilled.poll(); object != null; object = unfilled.poll()) {
+      fill(object);
+    }
+
+    out.writeByte(END);
+    return out.toByteArray();
+  }
+
+  /** Writes records that set the contents of {@code object}, creating what they hold first. */
+  private void fill(Object object) {
+    int id = ids.get(object);
+    if (object instanceof Upvalue upvalue) {
+      Object value = upvalue.get();
+      create(value);
+      out.writeByte(SET_UPVALUE);
+      out.writeInt(id);
+      writeValue(value);
+    } else {
+      var instance = (LoxInstance) object;
+      Shape shape = instance.shape();
+      for (int i = 0; i < shape.size(); i++) {
+        Object value = instance.field(i);
+        create(value);
+        out.writeByte(SET_FIELD);
+        out.writeInt(id);
+        ast.write(SymbolTable.name(shape.symbol(i)));
+        writeValue(value);
+      }
+    }
+  }
+
+  /** Writes a record that creates {@code value}, if it is an object not created yet. */
+  private void create(@Nullable Object value) {
+    if (value == null || ids.containsKey(value)) {
+      return;
+    }
+
+    switch (value) {
+      case LoxFunction function -> {
+        Stmt.Function declaration = function.declaration(errors);
+        LoxInstance receiver = function.receiver();
+        create(declaration);
+        create(receiver);
+        for (Upvalue upvalue : function.upvalues) {
+          create(upvalue);
+        }
+        out.writeByte(FUNCTION);
+        out.writeInt(ids.get(declaration));
+        out.writeBoolean(function.isInitializer());
+        out.writeInt(receiver == null ? -1 : ids.get(receiver));
+        out.writeInt(function.upvalues.length);
+        for (Upvalue upvalue : function.upvalues) {
+          out.writeInt(ids.get(upvalue));
+        }
+      }
+      case LoxClass klass -> {
+        create(klass.superclass);
+        SymbolMap<LoxFunction> methods = klass.methods();
+        int[] symbols = methods.keys();
+        for (int symbol : symbols) {
+          create(methods.get(symbol));
+        }
+        out.writeByte(CLASS);
+        ast.write(klass.name);
+        out.writeInt(klass.superclass == null ? -1 : ids.get(klass.superclass));
+        out.writeInt(symbols.length);
+        for (int symbol : symbols) {
+          ast.write(SymbolTable.name(symbol));
+          out.writeInt(ids.get(methods.get(symbol)));
+        }
+      }
+      case LoxInstance instance -> {
+        create(instance.klass());
+        out.writeByte(INSTANCE);
+        out.writeInt(ids.get(instance.klass()));
+        unfilled.add(instance);
+      }
+      case Upvalue upvalue -> {
+        out.writeByte(UPVALUE);
+        unfilled.add(upvalue);
+      }
+      case Stmt.Function declaration -> {
+        out.writeByte(DECLARATION);
+        ast.write(declaration);
+      }
+      default -> {
+        // Anything else is written in full wherever it's used.
+        return;
+      }
+    }
+    ids.put(value, ids.size());
+  }
+
+  private void writeValue(@Nullable Object value) {
+    switch (value) {
+      case null -> out.writeByte(NIL);
+      case Boolean b -> out.writeByte(b ? TRUE : FALSE);
+      case Double number -> {
+        out.writeByte(NUMBER);
+        out.writeDouble(number);
+      }
+      case String string -> {
+        out.writeByte(STRING);
+        ast.write(string);
+      }
+      case Rope rope -> {
+        out.writeByte(STRING);
+        ast.write(rope.toString());
+      }
+      case Builtin builtin -> {
+        out.writeByte(BUILTIN);
+        ast.write(builtin.name());
+      }
+      case LoxFunction function -> writeObject(function);
+      case LoxClass klass -> writeObject(klass);
+      case LoxInstance instance -> writeObject(instance);
+      default -> throw new AssertionError("Unexpected value " + value);
+    }
+  }
+
+  private void writeObject(Object object) {
+    out.writeByte(OBJECT);
+    out.writeInt(ids.get(object));
+  }
+}
@@ -0,0 +1,121 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A map from {@link SymbolTable symbols} to values.
+ *
+ * <p>It is an open-addressed hash table over a plain int array, so looking up a symbol neither
+ * boxes it nor calls {@code equals}. Symbols are small, dense numbers, which already spread out
+ * well across the table without any further hashing.
+ */
+final class SymbolMap<V> {
+  private static final int INITIAL_CAPACITY = 8;
+  private static final int EMPTY = -1;
+
+  private int[] keys;
+  private @Nullable Object[] values;
+  private int size = 0;
+
+  SymbolMap() {
+    keys = new int[INITIAL_CAPACITY];
+    Arrays.fill(keys, EMPTY);
+    values = new Object[INITIAL_CAPACITY];
+  }
+
+  /** Returns a map with the same entries as {@code other}. */
+  SymbolMap(SymbolMap<V> other) {
+    keys = other.keys.clone();
+    values = other.values.clone();
+    size = other.size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean containsKey(int symbol) {
+    return keys[indexOf(symbol)] != EMPTY;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable V get(int symbol) {
+    return (V) values[indexOf(symbol)];
+  }
+
+  void put(int symbol, V value) {
+    int index = indexOf(symbol);
+    if (keys[index] == EMPTY) {
+      keys[index] = symbol;
+      size++;
+    }
+    values[index] = value;
+
+    // Keep the table at most half full, so probes stay short.
+    if (size * 2 > keys.length) {
+      grow();
+    }
+  }
+
+  /** Puts every entry of {@code other} in this map. */
+  @SuppressWarnings("unchecked")
+  void putAll(SymbolMap<V> other) {
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.keys[i] != EMPTY) {
+        put(other.keys[i], (V) other.values[i]);
+      }
+    }
+  }
+
+  /** Returns the symbols, in no particular order. */
+  int[] keys() {
+    var result = new int[size];
+    int count = 0;
+    for (int key : keys) {
+      if (key != EMPTY) {
+        result[count++] = key;
+      }
+    }
+    return result;
+  }
+
+  /** Returns the values, in no particular order. */
+  @SuppressWarnings("unchecked")
+  List<V> values() {
+    var result = new ArrayList<V>(size);
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY) {
+        result.add((V) values[i]);
+      }
+    }
+    return result;
+  }
+
+  /** Returns where {@code symbol} is in the table, or the empty slot where it would go. */
+  private int indexOf(int symbol) {
+    int mask = keys.length - 1;
+    int index = symbol & mask;
+    while (keys[index] != EMPTY && keys[index] != symbol) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    values = new Object[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int index = indexOf(oldKeys[i]);
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+      }
+    }
+  }
+}
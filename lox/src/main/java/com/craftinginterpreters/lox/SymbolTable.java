@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct identifier a small int id, its symbol.
+ *
+ * <p>The {@link Scanner} interns each identifier it sees, so everything after it can key variables,
+ * fields and methods on the symbol in their {@link Token} instead of hashing and comparing names.
+ * Symbols are numbered from 0 upwards in the order names are first seen, so they hash well. The
+ * table is shared by every program in the JVM, so that a symbol means the same name wherever it
+ * turns up. It only holds one entry per distinct name; nothing sized by it, such as an array with a
+ * slot for every symbol, should be made per program or per run.
+ */
+final class SymbolTable {
+  private static final Map<String, Integer> symbols = new ConcurrentHashMap<>();
+
+  /** The name of each symbol, in an array that is replaced with a bigger copy when it fills up. */
+  private static volatile String[] names = new String[64];
+
+  private static volatile int size = 0;
+
+  static final int INIT = intern("init");
+  static final int THIS = intern("this");
+  static final int SUPER = intern("super");
+
+  private SymbolTable() {}
+
+  /** Returns the symbol for {@code name}, giving it a new one if it hasn't been seen before. */
+  static int intern(String name) {
+    // Only giving out a new symbol takes the lock, so programs being compiled on many threads at
+    // once don't wait on each other for the names they have in common.
+    Integer symbol = symbols.get(requireNonNull(name));
+    return symbol != null ? symbol : add(name);
+  }
+
+  private static synchronized int add(String name) {
+    Integer symbol = symbols.get(name);
+    if (symbol != null) {
+      return symbol;
+    }
+    if (size == names.length) {
+      names = Arrays.copyOf(names, size * 2);
+    }
+    names[size] = name;
+    symbols.put(name, size);
+    return size++;
+  }
+
+  /** Returns the name that {@code symbol} was given for. */
+  static String name(int symbol) {
+    return names[symbol];
+  }
+}
@@ -4,7 +4,13 @@ import static java.util.Objects.requireNonNull;
 
 import org.jspecify.annotations.Nullable;
 
-record Token(TokenType type, String lexeme, @Nullable Object literal, int line) {
+/**
+ * A token scanned from the source.
+ *
+ * <p>The {@code symbol} of an identifier, "this" or "super" is its name's {@link SymbolTable
+ * symbol}; any other token's is -1.
+ */
+record Token(TokenType type, String lexeme, @Nullable Object literal, int line, int symbol) {
 
   Token {
     requireNonNull(type);
@@ -0,0 +1,128 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The tokens the {@link Scanner} found in a program, packed into parallel arrays.
+ *
+ * <p>Each token is an index into the arrays, which hold its type, where its lexeme is in the
+ * source, its line, and either its identifier's {@link SymbolTable symbol} or where its literal is
+ * among the literals, so adding one allocates nothing beyond its literal. The {@link Parser} reads
+ * a token's type and literal straight from here, and only asks for a {@link Token} when a node of
+ * the tree keeps one.
+ */
+final class TokenBuffer {
+  private static final TokenType[] TYPES = TokenType.values();
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final ByteBuffer source;
+  private byte[] types = new byte[INITIAL_CAPACITY];
+  private int[] starts = new int[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int[] lines = new int[INITIAL_CAPACITY];
+
+  /** The symbol of an identifier, "this" or "super", the index of a literal, or else -1. */
+  private int[] extras = new int[INITIAL_CAPACITY];
+
+  private final List<Object> literals = new ArrayList<>();
+  private int size = 0;
+
+  /**
+   * The lexeme of each type of token that is always spelled the same way, made the first time a
+   * token of that type is asked for.
+   */
+  private final @Nullable String[] fixedLexemes = new String[TYPES.length];
+
+  /** Makes a buffer for the tokens of {@code source}, where their lexemes are. */
+  TokenBuffer(ByteBuffer source) {
+    this.source = source;
+  }
+
+  void add(TokenType type, int start, int length, int line) {
+    add(type, start, length, line, -1);
+  }
+
+  void addIdentifier(TokenType type, int start, int length, int line, int symbol) {
+    add(type, start, length, line, symbol);
+  }
+
+  void addLiteral(TokenType type, int start, int length, int line, Object literal) {
+    literals.add(literal);
+    add(type, start, length, line, literals.size() - 1);
+  }
+
+  private void add(TokenType type, int start, int length, int line, int extra) {
+    if (size == types.length) {
+      int capacity = size * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      extras = Arrays.copyOf(extras, capacity);
+    }
+    types[size] = (byte) type.ordinal();
+    starts[size] = start;
+    lengths[size] = length;
+    lines[size] = line;
+    extras[size] = extra;
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  TokenType type(int index) {
+    return TYPES[types[index]];
+  }
+
+  int line(int index) {
+    return lines[index];
+  }
+
+  @Nullable Object literal(int index) {
+    TokenType type = type(index);
+    return type == TokenType.NUMBER || type == TokenType.STRING
+        ? literals.get(extras[index])
+        : null;
+  }
+
+  /** Makes a {@link Token} for the token at {@code index}. */
+  Token token(int index) {
+    TokenType type = type(index);
+    int symbol = hasSymbol(type) ? extras[index] : -1;
+    return new Token(type, lexeme(index), literal(index), lines[index], symbol);
+  }
+
+  private String lexeme(int index) {
+    TokenType type = type(index);
+    if (hasSymbol(type)) {
+      return SymbolTable.name(extras[index]);
+    }
+    if (type == TokenType.NUMBER || type == TokenType.STRING) {
+      return decode(index);
+    }
+
+    String lexeme = fixedLexemes[type.ordinal()];
+    if (lexeme == null) {
+      lexeme = decode(index);
+      fixedLexemes[type.ordinal()] = lexeme;
+    }
+    return lexeme;
+  }
+
+  private String decode(int index) {
+    var bytes = new byte[lengths[index]];
+    source.get(starts[index], bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static boolean hasSymbol(TokenType type) {
+    return type == TokenType.IDENTIFIER || type == TokenType.THIS || type == TokenType.SUPER;
+  }
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.lox;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Thrown when an expression that was evaluated for a number, without boxing it, turned out to be
+ * something else. It carries the value the expression did evaluate to, so the caller can carry on
+ * with it rather than evaluating the expression again.
+ */
+final class UnexpectedResult extends Exception {
+  final @Nullable Object value;
+
+  UnexpectedResult(@Nullable Object value) {
+    // Disable some overhead like stack traces, which we don't need to report a value.
+    super(null, null, false, false);
+    this.value = value;
+  }
+}
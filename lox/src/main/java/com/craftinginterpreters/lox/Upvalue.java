@@ -0,0 +1,70 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A variable that closures have captured from the scope that declared it.
+ *
+ * <p>While that scope is running, the upvalue is open: it reads and writes the variable's slot on
+ * the {@link ValueStack}, so the scope and every closure that captured the variable see the same
+ * value. When the scope ends, the upvalue is closed: it keeps the variable's value itself, and the
+ * slot is free to be reused.
+ */
+final class Upvalue {
+  static final Upvalue[] NONE = new Upvalue[0];
+
+  private @Nullable ValueStack stack;
+  private final int slot;
+  private @Nullable Object value = null;
+
+  /** The next open upvalue down the stack, while this one is open. */
+  @Nullable Upvalue next;
+
+  /**
+   * Whether this upvalue belongs to a {@link WarmState}, so that interpreters write to copies of it
+   * rather than to it.
+   */
+  boolean frozen = false;
+
+  Upvalue(ValueStack stack, int slot, @Nullable Upvalue next) {
+    this.stack = requireNonNull(stack);
+    this.slot = slot;
+    this.next = next;
+  }
+
+  /** Makes an upvalue that is already closed, holding {@code value}. */
+  Upvalue(@Nullable Object value) {
+    this.stack = null;
+    this.slot = -1;
+    this.value = value;
+  }
+
+  /** Returns a closed copy of this upvalue, holding its value, for an interpreter to write. */
+  Upvalue copy() {
+    return new Upvalue(get());
+  }
+
+  int slot() {
+    return slot;
+  }
+
+  Object get() {
+    return stack != null ? stack.get(slot) : value;
+  }
+
+  void set(Object value) {
+    if (stack != null) {
+      stack.set(slot, value);
+    } else {
+      this.value = value;
+    }
+  }
+
+  void close() {
+    value = requireNonNull(stack).get(slot);
+    stack = null;
+    next = null;
+  }
+}
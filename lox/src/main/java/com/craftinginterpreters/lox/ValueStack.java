@@ -0,0 +1,95 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The slots of every local variable of every running Lox function, and of top-level blocks.
+ *
+ * <p>Each call gets a frame: a run of slots starting where the caller's frame ends, one for each
+ * variable the function can have in scope at once, numbered by the {@link Resolver}. Frames are
+ * reused as calls come and go, so calling a function doesn't allocate anything for its variables.
+ *
+ * <p>A closure reaches a variable it captured through an {@link Upvalue}, which uses the variable's
+ * slot here until the variable's scope ends, and then keeps the variable's value itself.
+ *
+ * <p>A slot can also hold a number unboxed, in a parallel array of doubles, so that a loop doing
+ * arithmetic on its variables doesn't allocate. The number is only boxed if something reads it
+ * with {@link #get}, rather than with {@link #getDouble}.
+ */
+final class ValueStack {
+  private static final int INITIAL_CAPACITY = 256;
+
+  /** Stands in {@link #values} for a number kept in {@link #numbers}. Never leaves this class. */
+  private static final Object UNBOXED = new Object();
+
+  private @Nullable Object[] values = new Object[INITIAL_CAPACITY];
+  private double[] numbers = new double[INITIAL_CAPACITY];
+
+  /** The upvalues that are still open, ordered from the highest slot to the lowest. */
+  private @Nullable Upvalue openUpvalues = null;
+
+  Object get(int slot) {
+    Object value = values[slot];
+    return value == UNBOXED ? (Object) numbers[slot] : value;
+  }
+
+  /** Returns the number in {@code slot}, throwing {@link UnexpectedResult} if it isn't one. */
+  double getDouble(int slot) throws UnexpectedResult {
+    Object value = values[slot];
+    return value == UNBOXED ? numbers[slot] : Interpreter.expectDouble(value);
+  }
+
+  void set(int slot, @Nullable Object value) {
+    values[slot] = value;
+  }
+
+  void setDouble(int slot, double value) {
+    values[slot] = UNBOXED;
+    numbers[slot] = value;
+  }
+
+  /** Makes sure there are at least {@code size} slots. */
+  void ensureCapacity(int size) {
+    if (size > values.length) {
+      int capacity = Math.max(size, values.length * 2);
+      values = Arrays.copyOf(values, capacity);
+      numbers = Arrays.copyOf(numbers, capacity);
+    }
+  }
+
+  /** Forgets the values in slots {@code from} up to {@code to}, so they can be collected. */
+  void clear(int from, int to) {
+    Arrays.fill(values, from, to, null);
+  }
+
+  /** Returns the upvalue for the variable in {@code slot}, shared by every closure capturing it. */
+  Upvalue capture(int slot) {
+    Upvalue previous = null;
+    Upvalue upvalue = openUpvalues;
+    while (upvalue != null && upvalue.slot() > slot) {
+      previous = upvalue;
+      upvalue = upvalue.next;
+    }
+    if (upvalue != null && upvalue.slot() == slot) {
+      return upvalue;
+    }
+
+    var created = new Upvalue(this, slot, upvalue);
+    if (previous == null) {
+      openUpvalues = created;
+    } else {
+      previous.next = created;
+    }
+    return created;
+  }
+
+  /** Closes the open upvalues of every slot from {@code slot} upwards, as their scopes end. */
+  void closeUpvalues(int slot) {
+    while (openUpvalues != null && openUpvalues.slot() >= slot) {
+      Upvalue upvalue = openUpvalues;
+      openUpvalues = upvalue.next;
+      upvalue.close();
+    }
+  }
+}
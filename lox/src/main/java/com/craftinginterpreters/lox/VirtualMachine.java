@@ -0,0 +1,583 @@
+package com.craftinginterpreters.lox;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Runs bytecode compiled by the {@link BytecodeCompiler}.
+ *
+ * <p>This is an alternative to the {@link Interpreter} for CPU-bound scripts, with the same
+ * semantics. Instead of walking the AST, it dispatches on one instruction at a time, keeping
+ * temporaries and locals on a single value stack, with a call frame per active function.
+ */
+final class VirtualMachine {
+
+  private static final int FRAMES_MAX = 1 << 16;
+
+  private final Environment globals = new Environment();
+  private final PrintStream out;
+  private final ErrorReporter errors;
+
+  /** How many steps the running script may take, and how long it may run for. */
+  final Budget budget = new Budget();
+
+  private Object[] stack = new Object[256];
+  private int stackTop = 0;
+  private CallFrame[] frames = new CallFrame[64];
+  private int frameCount = 0;
+
+  /** The open upvalues, sorted by the stack slot they point to, highest first. */
+  private @Nullable Upvalue openUpvalues = null;
+
+  VirtualMachine(PrintStream out, ErrorReporter errors) {
+    this.out = requireNonNull(out);
+    this.errors = requireNonNull(errors);
+    globals.define(
+        SymbolTable.intern("clock"),
+        new Native(0, arguments -> (double) System.currentTimeMillis() / 1_000.0));
+  }
+
+  /** An active function call. These are reused from one call to the next. */
+  private static final class CallFrame {
+    Closure closure;
+    int ip;
+    int base;
+
+    CallFrame(Closure closure) {
+      this.closure = closure;
+    }
+  }
+
+  private static final class Closure {
+    final BytecodeFunction function;
+    final Upvalue[] upvalues;
+
+    Closure(BytecodeFunction function) {
+      this.function = function;
+      this.upvalues = new Upvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+      return function.toString();
+    }
+  }
+
+  /**
+   * A variable captured by a closure. While the variable is still in scope, it is "open" and
+   * points at the variable's stack slot. Once the variable goes out of scope, the upvalue is
+   * "closed" and holds the value itself.
+   */
+  private static final class Upvalue {
+    final int slot;
+    boolean open = true;
+    @Nullable Object closed = null;
+    @Nullable Upvalue next;
+
+    Upvalue(int slot, @Nullable Upvalue next) {
+      this.slot = slot;
+      this.next = next;
+    }
+  }
+
+  private static final class Klass {
+    final String name;
+    final SymbolMap<Closure> methods = new SymbolMap<>();
+    final Shape rootShape = new Shape();
+    int expectedFieldCount = 0;
+
+    Klass(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static final class Instance {
+    final Klass klass;
+    private Shape shape;
+    private Object[] values;
+
+    Instance(Klass klass) {
+      this.klass = klass;
+      this.shape = klass.rootShape;
+      this.values = new Object[klass.expectedFieldCount];
+    }
+
+    /** Returns the index of the field named by {@code symbol}, or -1 if there isn't one. */
+    int indexOf(int symbol) {
+      return shape.indexOf(symbol);
+    }
+
+    void set(int symbol, Object value) {
+      int index = shape.indexOf(symbol);
+      if (index == -1) {
+        index = shape.size();
+        shape = shape.withField(symbol);
+        if (index == values.length) {
+          values = Arrays.copyOf(values, index + 1);
+        }
+        klass.expectedFieldCount = Math.max(klass.expectedFieldCount, shape.size());
+      }
+      values[index] = value;
+    }
+
+    @Override
+    public String toString() {
+      return klass.name + " instance";
+    }
+  }
+
+  private record BoundMethod(Object receiver, Closure method) {
+    @Override
+    public String toString() {
+      return method.toString();
+    }
+  }
+
+  private interface NativeFunction {
+    Object call(Object[] arguments);
+  }
+
+  private record Native(int arity, NativeFunction function) {
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  void interpret(BytecodeFunction script) {
+    var closure = new Closure(script);
+    push(closure);
+    try {
+      // Starting the script isn't a step, as it isn't in the Interpreter either.
+      pushFrame(closure, 0, 0);
+      run();
+    } catch (RuntimeError error) {
+      errors.runtimeError(error);
+      Arrays.fill(stack, 0, stackTop, null);
+      stackTop = 0;
+      frameCount = 0;
+      openUpvalues = null;
+    }
+  }
+
+  private void run() {
+    CallFrame frame = frames[frameCount - 1];
+    byte[] code = frame.closure.function.chunk.code;
+    Object[] constants = frame.closure.function.chunk.constants;
+    int ip = frame.ip;
+    int base = frame.base;
+
+    while (true) {
+      byte instruction = code[ip++];
+      switch (instruction) {
+        case OpCode.CONSTANT -> {
+          push(constants[readShort(code, ip)]);
+          ip += 2;
+        }
+        case OpCode.NIL -> push(null);
+        case OpCode.TRUE -> push(true);
+        case OpCode.FALSE -> push(false);
+        case OpCode.POP -> stack[--stackTop] = null;
+        case OpCode.GET_LOCAL -> {
+          push(stack[base + readShort(code, ip)]);
+          ip += 2;
+        }
+        case OpCode.SET_LOCAL -> {
+          stack[base + readShort(code, ip)] = peek(0);
+          ip += 2;
+        }
+        case OpCode.GET_GLOBAL -> {
+          var name = (int) constants[readShort(code, ip)];
+          ip += 2;
+          if (!globals.isDefined(name)) {
+            throw error(frame, ip, "Undefined variable '" + SymbolTable.name(name) + "'.");
+          }
+          push(globals.get(name));
+        }
+        case OpCode.DEFINE_GLOBAL -> {
+          globals.define((int) constants[readShort(code, ip)], pop());
+          ip += 2;
+        }
+        case OpCode.SET_GLOBAL -> {
+          var name = (int) constants[readShort(code, ip)];
+          ip += 2;
+          if (!globals.isDefined(name)) {
+            throw error(frame, ip, "Undefined variable '" + SymbolTable.name(name) + "'.");
+          }
+          globals.set(name, peek(0));
+        }
+        case OpCode.GET_UPVALUE -> {
+          Upvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+          ip += 2;
+          push(upvalue.open ? stack[upvalue.slot] : upvalue.closed);
+        }
+        case OpCode.SET_UPVALUE -> {
+          Upvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+          ip += 2;
+          if (upvalue.open) {
+            stack[upvalue.slot] = peek(0);
+          } else {
+            upvalue.closed = peek(0);
+          }
+        }
+        case OpCode.GET_PROPERTY -> {
+          var name = (int) constants[readShort(code, ip)];
+          ip += 2;
+          if (!(peek(0) instanceof Instance instance)) {
+            throw error(frame, ip, "Only instances have properties.");
+          }
+          int index = instance.indexOf(name);
+          if (index != -1) {
+            stack[stackTop - 1] = instance.values[index];
+          } else {
+            stack[stackTop - 1] = bindMethod(instance, instance.klass, name, frame, ip);
+          }
+        }
+        case OpCode.SET_PROPERTY -> {
+          var name = (int) constants[readShort(code, ip)];
+          ip += 2;
+          if (!(peek(1) instanceof Instance instance)) {
+            throw error(frame, ip, "Only instances have fields.");
+          }
+          Object value = pop();
+          instance.set(name, value);
+          stack[stackTop - 1] = value;
+        }
+        case OpCode.GET_SUPER -> {
+          var name = (int) constants[readShort(code, ip)];
+          ip += 2;
+          var superclass = (Klass) pop();
+          stack[stackTop - 1] = bindMethod(peek(0), superclass, name, frame, ip);
+        }
+        case OpCode.EQUAL -> {
+          Object b = pop();
+          stack[stackTop - 1] = Interpreter.isEqual(peek(0), b);
+        }
+        case OpCode.GREATER -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) > b;
+        }
+        case OpCode.GREATER_EQUAL -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) >= b;
+        }
+        case OpCode.LESS -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) < b;
+        }
+        case OpCode.LESS_EQUAL -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) <= b;
+        }
+        case OpCode.ADD -> {
+          Object b = peek(0);
+          Object a = peek(1);
+          if (a instanceof Double left && b instanceof Double right) {
+            stackTop--;
+            stack[stackTop - 1] = left + right;
+          } else if (Rope.isString(a) && Rope.isString(b)) {
+            stackTop--;
+            stack[stackTop - 1] = Rope.concat(a, b);
+          } else {
+            throw error(frame, ip, "Operands must be two numbers or two strings.");
+          }
+        }
+        case OpCode.SUBTRACT -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) - b;
+        }
+        case OpCode.MULTIPLY -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) * b;
+        }
+        case OpCode.DIVIDE -> {
+          checkNumberOperands(frame, ip);
+          double b = (double) pop();
+          stack[stackTop - 1] = (double) peek(0) / b;
+        }
+        case OpCode.NOT -> stack[stackTop - 1] = !Interpreter.isTruthy(peek(0));
+        case OpCode.NEGATE -> {
+          if (!(peek(0) instanceof Double value)) {
+            throw error(frame, ip, "Operand must be a number.");
+          }
+          stack[stackTop - 1] = -value;
+        }
+        case OpCode.PRINT -> out.println(Interpreter.stringify(pop()));
+        case OpCode.JUMP -> ip += readShort(code, ip) + 2;
+        case OpCode.JUMP_IF_FALSE -> {
+          if (Interpreter.isTruthy(peek(0))) {
+            ip += 2;
+          } else {
+            ip += readShort(code, ip) + 2;
+          }
+        }
+        case OpCode.LOOP -> {
+          budget.step(frame.closure.function.chunk.lines[ip - 1]);
+          ip -= readShort(code, ip) - 2;
+        }
+        case OpCode.CALL -> {
+          int argCount = code[ip++] & 0xff;
+          frame.ip = ip;
+          callValue(peek(argCount), argCount, frame.closure.function.chunk.lines[ip - 1]);
+          frame = frames[frameCount - 1];
+          code = frame.closure.function.chunk.code;
+          constants = frame.closure.function.chunk.constants;
+          ip = frame.ip;
+          base = frame.base;
+        }
+        case OpCode.INVOKE -> {
+          var name = (int) constants[readShort(code, ip)];
+          int argCount = code[ip + 2] & 0xff;
+          ip += 3;
+          frame.ip = ip;
+          invoke(name, argCount, frame.closure.function.chunk.lines[ip - 1]);
+          frame = frames[frameCount - 1];
+          code = frame.closure.function.chunk.code;
+          constants = frame.closure.function.chunk.constants;
+          ip = frame.ip;
+          base = frame.base;
+        }
+        case OpCode.SUPER_INVOKE -> {
+          var name = (int) constants[readShort(code, ip)];
+          int argCount = code[ip + 2] & 0xff;
+          ip += 3;
+          frame.ip = ip;
+          var superclass = (Klass) pop();
+          invokeFromClass(superclass, name, argCount, frame.closure.function.chunk.lines[ip - 1]);
+          frame = frames[frameCount - 1];
+          code = frame.closure.function.chunk.code;
+          constants = frame.closure.function.chunk.constants;
+          ip = frame.ip;
+          base = frame.base;
+        }
+        case OpCode.CLOSURE -> {
+          var function = (BytecodeFunction) constants[readShort(code, ip)];
+          ip += 2;
+          var closure = new Closure(function);
+          for (int i = 0; i < closure.upvalues.length; i++) {
+            boolean isLocal = code[ip] == 1;
+            int index = readShort(code, ip + 1);
+            ip += 3;
+            closure.upvalues[i] =
+                isLocal ? captureUpvalue(base + index) : frame.closure.upvalues[index];
+          }
+          push(closure);
+        }
+        case OpCode.CLOSE_UPVALUE -> {
+          closeUpvalues(stackTop - 1);
+          stack[--stackTop] = null;
+        }
+        case OpCode.RETURN -> {
+          Object result = pop();
+          closeUpvalues(base);
+          frameCount--;
+          Arrays.fill(stack, base, stackTop, null);
+          stackTop = base;
+          if (frameCount == 0) {
+            return;
+          }
+
+          push(result);
+          frame = frames[frameCount - 1];
+          code = frame.closure.function.chunk.code;
+          constants = frame.closure.function.chunk.constants;
+          ip = frame.ip;
+          base = frame.base;
+        }
+        case OpCode.CLASS -> {
+          push(new Klass((String) constants[readShort(code, ip)]));
+          ip += 2;
+        }
+        case OpCode.INHERIT -> {
+          if (!(peek(1) instanceof Klass superclass)) {
+            throw error(frame, ip, "Superclass must be a class.");
+          }
+          // Methods never change after their class is declared, so copying the superclass's
+          // methods down is equivalent to looking them up in it later.
+          var subclass = (Klass) peek(0);
+          subclass.methods.putAll(superclass.methods);
+        }
+        case OpCode.METHOD -> {
+          var method = (Closure) pop();
+          ((Klass) peek(0)).methods.put((int) constants[readShort(code, ip)], method);
+          ip += 2;
+        }
+        default -> throw new AssertionError("Unknown instruction " + instruction);
+      }
+    }
+  }
+
+  private static int readShort(byte[] code, int offset) {
+    return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+  }
+
+  private void push(@Nullable Object value) {
+    // There's no need to check for overflow, as call() made room for every value a function
+    // pushes.
+    stack[stackTop++] = value;
+  }
+
+  private Object pop() {
+    Object value = stack[--stackTop];
+    stack[stackTop] = null;
+    return value;
+  }
+
+  private Object peek(int distance) {
+    return stack[stackTop - 1 - distance];
+  }
+
+  private void checkNumberOperands(CallFrame frame, int ip) {
+    if (!(peek(0) instanceof Double && peek(1) instanceof Double)) {
+      throw error(frame, ip, "Operands must be numbers.");
+    }
+  }
+
+  private static RuntimeError error(CallFrame frame, int ip, String message) {
+    return new RuntimeError(frame.closure.function.chunk.lines[ip - 1], message);
+  }
+
+  private void callValue(Object callee, int argCount, int line) {
+    switch (callee) {
+      case Closure closure -> call(closure, argCount, line);
+      case BoundMethod bound -> {
+        stack[stackTop - argCount - 1] = bound.receiver();
+        call(bound.method(), argCount, line);
+      }
+      case Klass klass -> {
+        stack[stackTop - argCount - 1] = new Instance(klass);
+        Closure initializer = klass.methods.get(SymbolTable.INIT);
+        if (initializer != null) {
+          call(initializer, argCount, line);
+        } else if (argCount != 0) {
+          throw new RuntimeError(line, "Expected 0 arguments but got " + argCount + ".");
+        }
+      }
+      case Native nativeFunction -> {
+        checkArity(nativeFunction.arity(), argCount, line);
+        Object[] arguments = Arrays.copyOfRange(stack, stackTop - argCount, stackTop);
+        Object result = nativeFunction.function().call(arguments);
+        Arrays.fill(stack, stackTop - argCount - 1, stackTop, null);
+        stackTop -= argCount + 1;
+        push(result);
+      }
+      case null, default ->
+          throw new RuntimeError(line, "Can only call functions and classes.");
+    }
+  }
+
+  private void invoke(int name, int argCount, int line) {
+    if (!(peek(argCount) instanceof Instance instance)) {
+      throw new RuntimeError(line, "Only instances have properties.");
+    }
+
+    // A field can shadow a method.
+    int index = instance.indexOf(name);
+    if (index != -1) {
+      Object field = instance.values[index];
+      stack[stackTop - argCount - 1] = field;
+      callValue(field, argCount, line);
+      return;
+    }
+
+    invokeFromClass(instance.klass, name, argCount, line);
+  }
+
+  private void invokeFromClass(Klass klass, int name, int argCount, int line) {
+    Closure method = klass.methods.get(name);
+    if (method == null) {
+      throw new RuntimeError(line, "Undefined property '" + SymbolTable.name(name) + "'.");
+    }
+    call(method, argCount, line);
+  }
+
+  private BoundMethod bindMethod(Object receiver, Klass klass, int name, CallFrame frame, int ip) {
+    Closure method = klass.methods.get(name);
+    if (method == null) {
+      throw error(frame, ip, "Undefined property '" + SymbolTable.name(name) + "'.");
+    }
+    return new BoundMethod(receiver, method);
+  }
+
+  private void call(Closure closure, int argCount, int line) {
+    checkArity(closure.function.arity, argCount, line);
+    budget.step(line);
+    pushFrame(closure, argCount, line);
+  }
+
+  /** Starts running {@code closure} on the {@code argCount} arguments at the top of the stack. */
+  private void pushFrame(Closure closure, int argCount, int line) {
+    if (frameCount == FRAMES_MAX) {
+      throw new RuntimeError(line, "Stack overflow.");
+    }
+    if (frameCount == frames.length) {
+      frames = Arrays.copyOf(frames, frameCount * 2);
+    }
+
+    int base = stackTop - argCount - 1;
+    int needed = base + closure.function.maxStackSize + 1;
+    if (needed > stack.length) {
+      stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+    }
+
+    CallFrame frame = frames[frameCount];
+    if (frame == null) {
+      frame = new CallFrame(closure);
+      frames[frameCount] = frame;
+    }
+    frame.closure = closure;
+    frame.ip = 0;
+    frame.base = base;
+    frameCount++;
+  }
+
+  private static void checkArity(int arity, int argCount, int line) {
+    if (argCount != arity) {
+      throw new RuntimeError(line, "Expected " + arity + " arguments but got " + argCount + ".");
+    }
+  }
+
+  private Upvalue captureUpvalue(int slot) {
+    @Nullable Upvalue previous = null;
+    @Nullable Upvalue upvalue = openUpvalues;
+    while (upvalue != null && upvalue.slot > slot) {
+      previous = upvalue;
+      upvalue = upvalue.next;
+    }
+
+    if (upvalue != null && upvalue.slot == slot) {
+      return upvalue;
+    }
+
+    var created = new Upvalue(slot, upvalue);
+    if (previous == null) {
+      openUpvalues = created;
+    } else {
+      previous.next = created;
+    }
+    return created;
+  }
+
+  private void closeUpvalues(int lastSlot) {
+    while (openUpvalues != null && openUpvalues.slot >= lastSlot) {
+      Upvalue upvalue = requireNonNull(openUpvalues);
+      upvalue.closed = stack[upvalue.slot];
+      upvalue.open = false;
+      openUpvalues = upvalue.next;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The globals of a {@link LoxContext}, captured by {@link LoxContext#capture} once it has run some
+ * setup, which any number of contexts can then be forked from, with {@link
+ * LoxEngine#newContext(WarmState, java.io.PrintStream, java.io.PrintStream)}, to run more code
+ * without running the setup again.
+ *
+ * <p>Forking copies nothing up front. A forked context shares the captured globals until it first
+ * assigns one, and shares every instance and captured variable they reach until it first writes to
+ * that one, so what one context does is never seen by another. Classes and functions never change,
+ * so they are always shared. A state can be forked on any number of threads at once.
+ */
+public final class WarmState {
+  final Environment globals;
+
+  WarmState(Environment globals) {
+    this.globals = globals;
+    freeze();
+  }
+
+  /** Freezes every instance and upvalue that the globals reach. */
+  private void freeze() {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Queue<Object> queue = new ArrayDeque<>();
+    for (int symbol : globals.symbols()) {
+      add(globals.get(symbol), seen, queue);
+    }
+
+    for (Object object = queue.poll(); object != null; object = queue.poll()) {
+      switch (object) {
+        case LoxInstance instance -> {
+          instance.frozen = true;
+          add(instance.klass(), seen, queue);
+          for (int i = 0; i < instance.shape().size(); i++) {
+            add(instance.field(i), seen, queue);
+          }
+        }
+        case Upvalue upvalue -> {
+          upvalue.frozen = true;
+          add(upvalue.get(), seen, queue);
+        }
+        case LoxFunction function -> {
+          add(function.receiver(), seen, queue);
+          for (Upvalue upvalue : function.upvalues) {
+            add(upvalue, seen, queue);
+          }
+        }
+        case LoxClass klass -> {
+          add(klass.superclass, seen, queue);
+          klass.methods().values().forEach(method -> add(method, seen, queue));
+        }
+        default -> throw new AssertionError("Unexpected object " + object);
+      }
+    }
+  }
+
+  private static void add(@Nullable Object value, Set<Object> seen, Queue<Object> queue) {
+    if (value instanceof Rope rope) {
+      // Flattening a rope changes it, so do it now rather than in forks on different threads.
+      rope.toString();
+    }
+    if ((value instanceof LoxInstance
+            || value instanceof Upvalue
+            || value instanceof LoxFunction
+            || value instanceof LoxClass)
+        && seen.add(value)) {
+      queue.add(value);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the line that each engine reports a run stopped by its budget at. A run that is out of
+ * time or interrupted stops at its first step, so those tests see the first loop iteration or call.
+ */
+class BudgetTest {
+  private static final String LOOP = "var x = 1;\nwhile (true) {}\n";
+  private static final String LOOP_IN_FUNCTION = "fun spin() {\n  while (true) {}\n}\nspin();\n";
+  private static final String RECURSION = "fun f() {\n  var a = 1;\n  f();\n}\nf();\n";
+
+  @Test
+  void vmReportsLoopWhenOutOfSteps() throws LoxCompileException {
+    var engine = LoxEngine.builder().useVm(true).maxSteps(1000);
+    assertEquals("Ran out of steps.\n[line 2]", run(engine, LOOP));
+    assertEquals("Ran out of steps.\n[line 2]", run(engine, LOOP_IN_FUNCTION));
+  }
+
+  @Test
+  void vmReportsFirstStepWhenOutOfTime() throws LoxCompileException {
+    var engine = LoxEngine.builder().useVm(true).timeout(Duration.ZERO);
+    assertEquals("Ran out of time.\n[line 2]", run(engine, LOOP));
+    assertEquals("Ran out of time.\n[line 4]", run(engine, LOOP_IN_FUNCTION));
+  }
+
+  @Test
+  void vmReportsFirstStepWhenInterrupted() throws LoxCompileException {
+    var engine = LoxEngine.builder().useVm(true);
+    assertEquals("Interrupted.\n[line 2]", runInterrupted(engine, LOOP));
+    assertEquals("Interrupted.\n[line 4]", runInterrupted(engine, LOOP_IN_FUNCTION));
+  }
+
+  @Test
+  void interpreterReportsTheSameLinesAsVm() throws LoxCompileException {
+    for (boolean jit : new boolean[] {false, true}) {
+      var steps = LoxEngine.builder().jit(jit).maxSteps(1000);
+      assertEquals("Ran out of steps.\n[line 2]", run(steps, LOOP));
+      assertEquals("Ran out of steps.\n[line 2]", run(steps, LOOP_IN_FUNCTION));
+
+      var time = LoxEngine.builder().jit(jit).timeout(Duration.ZERO);
+      assertEquals("Ran out of time.\n[line 2]", run(time, LOOP));
+      assertEquals("Ran out of time.\n[line 4]", run(time, LOOP_IN_FUNCTION));
+
+      var interrupted = LoxEngine.builder().jit(jit);
+      assertEquals("Interrupted.\n[line 2]", runInterrupted(interrupted, LOOP));
+      assertEquals("Interrupted.\n[line 4]", runInterrupted(interrupted, LOOP_IN_FUNCTION));
+    }
+  }
+
+  @Test
+  void stackOverflowIsReportedAtTheRecursiveCall() throws LoxCompileException {
+    assertEquals("Stack overflow.\n[line 3]", run(LoxEngine.builder().useVm(true), RECURSION));
+    assertEquals("Stack overflow.\n[line 3]", run(LoxEngine.builder().jit(false), RECURSION));
+    assertEquals("Stack overflow.\n[line 3]", run(LoxEngine.builder().jit(true), RECURSION));
+  }
+
+  /** Runs {@code source} on a thread that's already interrupted, so it stops at its first step. */
+  private static String runInterrupted(LoxEngine.Builder engine, String source)
+      throws LoxCompileException {
+    Thread.currentThread().interrupt();
+    try {
+      return run(engine, source);
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  /** Runs {@code source}, which must fail at runtime, and returns the error it reported. */
+  private static String run(LoxEngine.Builder builder, String source) throws LoxCompileException {
+    LoxEngine engine = builder.build();
+    var out = new ByteArrayOutputStream();
+    var err = new ByteArrayOutputStream();
+    LoxContext context =
+        engine.newContext(
+            new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+    assertEquals(LoxContext.Result.RUNTIME_ERROR, context.run(engine.compile(source)));
+    return err.toString(StandardCharsets.UTF_8).strip();
+  }
+}